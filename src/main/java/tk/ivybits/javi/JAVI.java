@@ -21,6 +21,7 @@ package tk.ivybits.javi;
 import tk.ivybits.javi.ffmpeg.LibAVCodec;
 import tk.ivybits.javi.ffmpeg.LibAVFormat;
 import tk.ivybits.javi.ffmpeg.LibAVUtil;
+import tk.ivybits.javi.ffmpeg.LockManager;
 import tk.ivybits.javi.ffmpeg.Natives;
 
 import java.io.IOException;
@@ -49,6 +50,7 @@ public final class JAVI {
             Natives.unpack();
             LibAVFormat.av_register_all();
             LibAVCodec.avcodec_register_all();
+            LockManager.register();
             registered = true;
         } else
             LibAVFormat.avformat_network_init();
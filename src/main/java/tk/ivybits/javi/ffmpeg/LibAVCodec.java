@@ -18,6 +18,7 @@
 
 package tk.ivybits.javi.ffmpeg;
 
+import com.sun.jna.Callback;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.IntByReference;
@@ -27,6 +28,15 @@ import tk.ivybits.javi.ffmpeg.avcodec.AVCodec;
 import tk.ivybits.javi.ffmpeg.avutil.AVFrame;
 
 public class LibAVCodec {
+    public static final int AV_LOCK_CREATE = 0;
+    public static final int AV_LOCK_OBTAIN = 1;
+    public static final int AV_LOCK_RELEASE = 2;
+    public static final int AV_LOCK_DESTROY = 3;
+
+    public static interface AVLockManagerCallback extends Callback {
+        int invoke(Pointer mutex, int op);
+    }
+
     public static native int avcodec_version();
 
     public static native AVCodec avcodec_find_decoder(int id);
@@ -51,8 +61,14 @@ public class LibAVCodec {
 
     public static native void av_free_packet(Pointer pointer);
 
+    public static native int av_dup_packet(Pointer pointer);
+
     public static native int avcodec_close(Pointer avctx);
 
+    public static native int avcodec_copy_context(Pointer dest, Pointer src);
+
+    public static native void avcodec_flush_buffers(Pointer avctx);
+
     public static native void avcodec_free_frame(PointerByReference frame);
 
     public static native void avsubtitle_free(Pointer sub);
@@ -61,6 +77,8 @@ public class LibAVCodec {
 
     public static native void avpicture_free(Pointer picture);
 
+    public static native int av_lockmgr_register(AVLockManagerCallback cb);
+
     static {
         JAVI.initialize();
         Native.register(Natives.getPath("avcodec-55").getAbsolutePath());
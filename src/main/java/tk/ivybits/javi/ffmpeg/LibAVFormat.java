@@ -18,12 +18,33 @@
 
 package tk.ivybits.javi.ffmpeg;
 
+import com.sun.jna.Callback;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.PointerByReference;
 import tk.ivybits.javi.JAVI;
 
 public class LibAVFormat {
+    public static final int AVSEEK_FLAG_BACKWARD = 1;
+    public static final int AVSEEK_FLAG_BYTE = 2;
+    public static final int AVSEEK_FLAG_ANY = 4;
+    public static final int AVSEEK_FLAG_FRAME = 8;
+    public static final int AVSEEK_SIZE = 0x10000;
+    public static final int AVSEEK_FORCE = 0x20000;
+    public static final int AVFMT_FLAG_CUSTOM_IO = 0x0080;
+
+    public static interface AVIOReadCallback extends Callback {
+        int invoke(Pointer opaque, Pointer buf, int buf_size);
+    }
+
+    public static interface AVIOSeekCallback extends Callback {
+        long invoke(Pointer opaque, long offset, int whence);
+    }
+
+    public static interface AVIOInterruptCallback extends Callback {
+        int invoke(Pointer opaque);
+    }
+
     public static native int avformat_version();
 
     public static native void av_register_all();
@@ -32,6 +53,14 @@ public class LibAVFormat {
 
     public static native int avformat_network_deinit();
 
+    public static native Pointer avformat_alloc_context();
+
+    public static native Pointer av_find_input_format(String short_name);
+
+    public static native Pointer avio_alloc_context(Pointer buffer, int buffer_size, int write_flag, Pointer opaque,
+                                                    AVIOReadCallback read_packet, Pointer write_packet,
+                                                    AVIOSeekCallback seek);
+
     public static native int avformat_open_input(PointerByReference ps, String filename, Pointer fmt, PointerByReference options);
 
     public static native int av_find_stream_info(Pointer ps);
@@ -44,6 +73,8 @@ public class LibAVFormat {
 
     public static native void avformat_close_input(PointerByReference s);
 
+    public static native void avformat_free_context(Pointer s);
+
     static {
         JAVI.initialize();
         Native.register(Natives.getPath("avformat-55").getAbsolutePath());
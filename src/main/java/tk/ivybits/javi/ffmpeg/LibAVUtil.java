@@ -24,9 +24,19 @@ import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 import tk.ivybits.javi.JAVI;
 import tk.ivybits.javi.ffmpeg.avutil.AVDictionary;
-import tk.ivybits.javi.ffmpeg.avutil.AVFrame;
 
 public class LibAVUtil {
+    public static final long AV_NOPTS_VALUE = 0x8000000000000000L;
+
+    public static final int AV_PIX_FMT_FLAG_BE = 1 << 0;
+    public static final int AV_PIX_FMT_FLAG_PAL = 1 << 1;
+    public static final int AV_PIX_FMT_FLAG_BITSTREAM = 1 << 2;
+    public static final int AV_PIX_FMT_FLAG_HWACCEL = 1 << 3;
+    public static final int AV_PIX_FMT_FLAG_PLANAR = 1 << 4;
+    public static final int AV_PIX_FMT_FLAG_RGB = 1 << 5;
+    public static final int AV_PIX_FMT_FLAG_PSEUDOPAL = 1 << 6;
+    public static final int AV_PIX_FMT_FLAG_ALPHA = 1 << 7;
+
     public static native int avutil_version();
 
     public static native Pointer av_malloc(int size);
@@ -44,6 +54,10 @@ public class LibAVUtil {
 
     public static native AVDictionary.Entry av_dict_get(AVDictionary m, String key, AVDictionary.Entry prev, int flags);
 
+    public static native int av_dict_set(PointerByReference pm, String key, String value, int flags);
+
+    public static native void av_dict_free(PointerByReference m);
+
     public static native Pointer av_pix_fmt_desc_get(int pix_fmt);
 
     public static native int av_get_bits_per_pixel(Pointer pixdesc);
@@ -52,7 +66,15 @@ public class LibAVUtil {
 
     public static native int av_image_fill_linesizes(int[] linesizes, int pix_fmt, int width);
 
-    public static native void av_frame_unref(AVFrame.ByReference frame);
+    public static native Pointer av_frame_alloc();
+
+    public static native void av_frame_free(PointerByReference frame);
+
+    public static native int av_frame_ref(Pointer dst, Pointer src);
+
+    public static native void av_frame_move_ref(Pointer dst, Pointer src);
+
+    public static native void av_frame_unref(Pointer frame);
 
     static {
         JAVI.initialize();
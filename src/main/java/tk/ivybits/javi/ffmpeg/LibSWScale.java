@@ -23,10 +23,21 @@ import com.sun.jna.Pointer;
 import tk.ivybits.javi.JAVI;
 
 public class LibSWScale {
+    public static final int SWS_FAST_BILINEAR = 0x1;
+    public static final int SWS_BILINEAR = 0x2;
+    public static final int SWS_BICUBIC = 0x4;
+    public static final int SWS_POINT = 0x10;
+    public static final int SWS_AREA = 0x20;
+    public static final int SWS_FULL_CHR_H_INT = 0x2000;
+    public static final int SWS_FULL_CHR_H_INP = 0x4000;
+    public static final int SWS_ACCURATE_RND = 0x40000;
+
     public static native Pointer sws_getContext(int scrW, int srcH, int scrFormat, int dstW, int dstH, int dstFormat, int flags, Pointer srcFilter, Pointer dstFilter, Pointer param);
 
     public static native int sws_scale(Pointer c, Pointer src, int[] srcStride, int srcSliceY, int srcSliceH, Pointer dst, int[] dstStride);
 
+    public static native int sws_scale(Pointer c, Pointer src, Pointer srcStride, int srcSliceY, int srcSliceH, Pointer dst, Pointer dstStride);
+
     public static native void sws_freeContext(Pointer swsContext);
 
     static {
@@ -0,0 +1,87 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg;
+
+import com.sun.jna.Pointer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.*;
+
+/**
+ * Lock manager handed to FFmpeg, which otherwise refuses to open or close codecs on more than one thread at once.
+ * <p/>
+ * Mutexes are semaphores, since FFmpeg makes no promise that a lock is released on the thread that obtained it.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LockManager implements AVLockManagerCallback {
+    private static final LockManager INSTANCE = new LockManager();
+    private final ConcurrentHashMap<Long, Semaphore> locks = new ConcurrentHashMap<Long, Semaphore>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private LockManager() {
+    }
+
+    /**
+     * Registers the lock manager with FFmpeg. Must be called once codecs are registered.
+     */
+    public static void register() {
+        // Held in a static field for good: FFmpeg keeps calling it for as long as the library is loaded
+        av_lockmgr_register(INSTANCE);
+    }
+
+    @Override
+    public int invoke(Pointer mutex, int op) {
+        switch (op) {
+            case AV_LOCK_CREATE: {
+                // The handle FFmpeg stores is the key of the lock, not an address
+                long id = ids.incrementAndGet();
+                locks.put(id, new Semaphore(1));
+                mutex.setPointer(0, new Pointer(id));
+                return 0;
+            }
+            case AV_LOCK_OBTAIN: {
+                Semaphore lock = locks.get(Pointer.nativeValue(mutex.getPointer(0)));
+                if (lock == null)
+                    return 1;
+                lock.acquireUninterruptibly();
+                return 0;
+            }
+            case AV_LOCK_RELEASE: {
+                Semaphore lock = locks.get(Pointer.nativeValue(mutex.getPointer(0)));
+                if (lock == null)
+                    return 1;
+                lock.release();
+                return 0;
+            }
+            case AV_LOCK_DESTROY: {
+                Pointer id = mutex.getPointer(0);
+                if (id != null)
+                    locks.remove(Pointer.nativeValue(id));
+                mutex.setPointer(0, null);
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
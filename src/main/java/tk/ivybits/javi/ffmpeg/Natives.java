@@ -1,6 +1,8 @@
 package tk.ivybits.javi.ffmpeg;
 
+import com.sun.jna.Native;
 import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 
 import java.io.*;
 import java.net.URLConnection;
@@ -89,6 +91,31 @@ public class Natives {
         return cache;
     }
 
+    /**
+     * Reads a native pointer without wrapping it in a {@code Pointer} object.
+     *
+     * @param pointer The memory to read from.
+     * @param offset  The offset of the pointer in said memory, in bytes.
+     * @return The address stored at the offset.
+     */
+    public static long getAddress(Pointer pointer, long offset) {
+        return Native.POINTER_SIZE == 8 ? pointer.getLong(offset) : pointer.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Writes a native pointer without wrapping it in a {@code Pointer} object.
+     *
+     * @param pointer The memory to write to.
+     * @param offset  The offset of the pointer in said memory, in bytes.
+     * @param address The address to store at the offset.
+     */
+    public static void setAddress(Pointer pointer, long offset, long address) {
+        if (Native.POINTER_SIZE == 8)
+            pointer.setLong(offset, address);
+        else
+            pointer.setInt(offset, (int) address);
+    }
+
     private static String getLibraryPath(String name) {
         return String.format(libNameFormat, Platform.is64Bit() ? 64 : 32, name);
     }
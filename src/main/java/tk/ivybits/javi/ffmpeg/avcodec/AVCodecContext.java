@@ -284,6 +284,22 @@ public class AVCodecContext extends Structure {
         int apply(ByReference c, execute2_callback2 func, Pointer arg2, IntByReference ret, int count);
     }
 
+    // Field offsets, for reading single fields without marshalling the entire structure through read()
+    private static final int WIDTH_OFFSET, HEIGHT_OFFSET, PIX_FMT_OFFSET, SAMPLE_RATE_OFFSET, CHANNELS_OFFSET,
+            SAMPLE_FMT_OFFSET, FRAME_NUMBER_OFFSET, ACTIVE_THREAD_TYPE_OFFSET;
+
+    static {
+        AVCodecContext layout = new AVCodecContext();
+        WIDTH_OFFSET = layout.fieldOffset("width");
+        HEIGHT_OFFSET = layout.fieldOffset("height");
+        PIX_FMT_OFFSET = layout.fieldOffset("pix_fmt");
+        SAMPLE_RATE_OFFSET = layout.fieldOffset("sample_rate");
+        CHANNELS_OFFSET = layout.fieldOffset("channels");
+        SAMPLE_FMT_OFFSET = layout.fieldOffset("sample_fmt");
+        FRAME_NUMBER_OFFSET = layout.fieldOffset("frame_number");
+        ACTIVE_THREAD_TYPE_OFFSET = layout.fieldOffset("active_thread_type");
+    }
+
     public AVCodecContext() {
         super();
     }
@@ -293,6 +309,43 @@ public class AVCodecContext extends Structure {
         read();
     }
 
+    /*
+     * Accessors reading straight from native memory.
+     * Unlike the public fields, these never go stale, and do not require a read() beforehand.
+     */
+
+    public int getWidth() {
+        return getPointer().getInt(WIDTH_OFFSET);
+    }
+
+    public int getHeight() {
+        return getPointer().getInt(HEIGHT_OFFSET);
+    }
+
+    public int getPixFmt() {
+        return getPointer().getInt(PIX_FMT_OFFSET);
+    }
+
+    public int getSampleRate() {
+        return getPointer().getInt(SAMPLE_RATE_OFFSET);
+    }
+
+    public int getChannels() {
+        return getPointer().getInt(CHANNELS_OFFSET);
+    }
+
+    public int getSampleFmt() {
+        return getPointer().getInt(SAMPLE_FMT_OFFSET);
+    }
+
+    public int getFrameNumber() {
+        return getPointer().getInt(FRAME_NUMBER_OFFSET);
+    }
+
+    public int getActiveThreadType() {
+        return getPointer().getInt(ACTIVE_THREAD_TYPE_OFFSET);
+    }
+
     @Override
     protected List getFieldOrder() {
         return Arrays.asList("av_class", "log_level_offset", "codec_type",
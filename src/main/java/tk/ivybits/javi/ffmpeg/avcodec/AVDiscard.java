@@ -0,0 +1,57 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.avcodec;
+
+/**
+ * Values of {@code enum AVDiscard}, used to select which packets or frames may be dropped.
+ */
+public class AVDiscard {
+    /**
+     * Discard nothing.
+     */
+    public static final int AVDISCARD_NONE = -16;
+    /**
+     * Discard useless packets, such as zero-sized packets in AVI.
+     */
+    public static final int AVDISCARD_DEFAULT = 0;
+    /**
+     * Discard all non-reference frames.
+     */
+    public static final int AVDISCARD_NONREF = 8;
+    /**
+     * Discard all bidirectional frames.
+     */
+    public static final int AVDISCARD_BIDIR = 16;
+    /**
+     * Discard all frames except intra frames.
+     */
+    public static final int AVDISCARD_NONINTRA = 24;
+    /**
+     * Discard all frames except keyframes.
+     */
+    public static final int AVDISCARD_NONKEY = 32;
+    /**
+     * Discard everything.
+     */
+    public static final int AVDISCARD_ALL = 48;
+
+    private AVDiscard() {
+        throw new AssertionError();
+    }
+}
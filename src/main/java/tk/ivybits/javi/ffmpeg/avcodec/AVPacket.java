@@ -20,6 +20,7 @@ package tk.ivybits.javi.ffmpeg.avcodec;
 
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
+import tk.ivybits.javi.ffmpeg.Natives;
 
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +29,9 @@ public class AVPacket extends Structure {
     public static class ByReference extends AVPacket implements Structure.ByReference {
     }
 
+    public static final int AV_PKT_FLAG_KEY = 0x0001;
+    public static final int AV_PKT_FLAG_CORRUPT = 0x0002;
+
     public Pointer buf;
     public long pts;
     public long dts;
@@ -49,10 +53,63 @@ public class AVPacket extends Structure {
     public long pos;
     public long convergence_duration;
 
+    // Field offsets, for reading single fields without marshalling the entire structure through read()
+    private static final int PTS_OFFSET, DTS_OFFSET, DATA_OFFSET, SIZE_OFFSET, STREAM_INDEX_OFFSET, FLAGS_OFFSET,
+            DURATION_OFFSET, POS_OFFSET;
+
+    static {
+        AVPacket layout = new AVPacket();
+        PTS_OFFSET = layout.fieldOffset("pts");
+        DTS_OFFSET = layout.fieldOffset("dts");
+        DATA_OFFSET = layout.fieldOffset("data");
+        SIZE_OFFSET = layout.fieldOffset("size");
+        STREAM_INDEX_OFFSET = layout.fieldOffset("stream_index");
+        FLAGS_OFFSET = layout.fieldOffset("flags");
+        DURATION_OFFSET = layout.fieldOffset("duration");
+        POS_OFFSET = layout.fieldOffset("pos");
+    }
+
     public AVPacket() {
         super();
     }
 
+    /*
+     * Accessors reading straight from native memory.
+     * Unlike the public fields, these never go stale, and do not require a read() beforehand.
+     */
+
+    public long getPts() {
+        return getPointer().getLong(PTS_OFFSET);
+    }
+
+    public long getDts() {
+        return getPointer().getLong(DTS_OFFSET);
+    }
+
+    public long getData() {
+        return Natives.getAddress(getPointer(), DATA_OFFSET);
+    }
+
+    public int getSize() {
+        return getPointer().getInt(SIZE_OFFSET);
+    }
+
+    public int getStreamIndex() {
+        return getPointer().getInt(STREAM_INDEX_OFFSET);
+    }
+
+    public int getFlags() {
+        return getPointer().getInt(FLAGS_OFFSET);
+    }
+
+    public int getDuration() {
+        return getPointer().getInt(DURATION_OFFSET);
+    }
+
+    public long getPos() {
+        return getPointer().getLong(POS_OFFSET);
+    }
+
     @Override
     protected List getFieldOrder() {
         return Arrays.asList("buf", "pts", "dts", "data", "size",
@@ -21,6 +21,7 @@ package tk.ivybits.javi.ffmpeg.avformat;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.LibAVFormat;
 import tk.ivybits.javi.ffmpeg.avutil.AVDictionary;
 import tk.ivybits.javi.ffmpeg.avutil.AVRational;
 
@@ -68,7 +69,8 @@ public class AVFormatContext extends Structure {
     public int fps_probe_size;
     public int error_recognition;
 
-    public Pointer interrupt_callback;
+    // AVIOInterruptCB, inlined
+    public LibAVFormat.AVIOInterruptCallback interrupt_callback;
     public Pointer interrupt_opaque;
 
     public int debug;
@@ -18,12 +18,14 @@
 
 package tk.ivybits.javi.ffmpeg.avutil;
 
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.ptr.ByteByReference;
 import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 import com.sun.jna.ptr.ShortByReference;
+import tk.ivybits.javi.ffmpeg.Natives;
 import tk.ivybits.javi.ffmpeg.avcodec.AVCodecContext;
 
 import java.util.Arrays;
@@ -109,6 +111,30 @@ public class AVFrame extends Structure {
 
     public static final int AV_NUM_DATA_POINTERS = 8;
 
+    // Field offsets, for reading single fields without marshalling the entire structure through read()
+    private static final int DATA_OFFSET, LINESIZE_OFFSET, EXTENDED_DATA_OFFSET, WIDTH_OFFSET, HEIGHT_OFFSET,
+            NB_SAMPLES_OFFSET, FORMAT_OFFSET, KEY_FRAME_OFFSET, PTS_OFFSET, PKT_PTS_OFFSET, PKT_DTS_OFFSET,
+            BEST_EFFORT_TIMESTAMP_OFFSET, PKT_POS_OFFSET, PKT_DURATION_OFFSET, CHANNELS_OFFSET;
+
+    static {
+        AVFrame layout = new AVFrame();
+        DATA_OFFSET = layout.fieldOffset("data");
+        LINESIZE_OFFSET = layout.fieldOffset("linesize");
+        EXTENDED_DATA_OFFSET = layout.fieldOffset("extended_data");
+        WIDTH_OFFSET = layout.fieldOffset("width");
+        HEIGHT_OFFSET = layout.fieldOffset("height");
+        NB_SAMPLES_OFFSET = layout.fieldOffset("nb_samples");
+        FORMAT_OFFSET = layout.fieldOffset("format");
+        KEY_FRAME_OFFSET = layout.fieldOffset("key_frame");
+        PTS_OFFSET = layout.fieldOffset("pts");
+        PKT_PTS_OFFSET = layout.fieldOffset("pkt_pts");
+        PKT_DTS_OFFSET = layout.fieldOffset("pkt_dts");
+        BEST_EFFORT_TIMESTAMP_OFFSET = layout.fieldOffset("best_effort_timestamp");
+        PKT_POS_OFFSET = layout.fieldOffset("pkt_pos");
+        PKT_DURATION_OFFSET = layout.fieldOffset("pkt_duration");
+        CHANNELS_OFFSET = layout.fieldOffset("channels");
+    }
+
 
     public AVFrame(Pointer address) {
         super(address);
@@ -119,6 +145,74 @@ public class AVFrame extends Structure {
         super();
     }
 
+    /*
+     * Accessors reading straight from native memory.
+     * Unlike the public fields, these never go stale, and do not require a read() beforehand.
+     */
+
+    public long getData(int plane) {
+        return Natives.getAddress(getPointer(), DATA_OFFSET + plane * Native.POINTER_SIZE);
+    }
+
+    public int getLinesize(int plane) {
+        return getPointer().getInt(LINESIZE_OFFSET + plane * 4);
+    }
+
+    public long getExtendedData(int plane) {
+        // The first planes are mirrored in data[], which saves dereferencing extended_data
+        if (plane < AV_NUM_DATA_POINTERS)
+            return getData(plane);
+        return Natives.getAddress(getPointer().getPointer(EXTENDED_DATA_OFFSET), plane * Native.POINTER_SIZE);
+    }
+
+    public int getWidth() {
+        return getPointer().getInt(WIDTH_OFFSET);
+    }
+
+    public int getHeight() {
+        return getPointer().getInt(HEIGHT_OFFSET);
+    }
+
+    public int getNbSamples() {
+        return getPointer().getInt(NB_SAMPLES_OFFSET);
+    }
+
+    public int getFormat() {
+        return getPointer().getInt(FORMAT_OFFSET);
+    }
+
+    public int getKeyFrame() {
+        return getPointer().getInt(KEY_FRAME_OFFSET);
+    }
+
+    public long getPts() {
+        return getPointer().getLong(PTS_OFFSET);
+    }
+
+    public long getPktPts() {
+        return getPointer().getLong(PKT_PTS_OFFSET);
+    }
+
+    public long getPktDts() {
+        return getPointer().getLong(PKT_DTS_OFFSET);
+    }
+
+    public long getBestEffortTimestamp() {
+        return getPointer().getLong(BEST_EFFORT_TIMESTAMP_OFFSET);
+    }
+
+    public long getPktPos() {
+        return getPointer().getLong(PKT_POS_OFFSET);
+    }
+
+    public long getPktDuration() {
+        return getPointer().getLong(PKT_DURATION_OFFSET);
+    }
+
+    public int getChannels() {
+        return getPointer().getInt(CHANNELS_OFFSET);
+    }
+
     @Override
     protected List<String> getFieldOrder() {
         return Arrays.asList("data", "linesize", "extended_data", "width", "height", "nb_samples", "format",
@@ -0,0 +1,194 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.avutil.Macros;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static tk.ivybits.javi.ffmpeg.LibAVFormat.*;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_free;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_freep;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_malloc;
+
+/**
+ * Source of media data for FFmpeg, read through a custom AVIOContext.
+ * <p/>
+ * FFmpeg reads into an I/O buffer of its own, which implementations fill straight through a reusable direct
+ * {@link ByteBuffer} view, rather than through an intermediate copy.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public abstract class AVIOSource implements Closeable {
+    /**
+     * Size of the I/O buffer FFmpeg reads into, in bytes.
+     */
+    public static final int BUFFER_SIZE = 32768;
+    private static final int SEEK_SET = 0, SEEK_CUR = 1, SEEK_END = 2;
+    private static final int AVERROR_EOF = -Macros.makeBETag('E', 'O', 'F', ' ');
+    private static final int AVERROR_EIO = -5;
+    // Callbacks are only weakly referenced by JNA, so they must live as long as the context does
+    private final AVIOReadCallback readCallback = new AVIOReadCallback() {
+        @Override
+        public int invoke(Pointer opaque, Pointer buf, int size) {
+            try {
+                int read = read(view(Pointer.nativeValue(buf), size));
+                return read < 0 ? AVERROR_EOF : read;
+            } catch (IOException e) {
+                return AVERROR_EIO;
+            }
+        }
+    };
+    private final AVIOSeekCallback seekCallback = new AVIOSeekCallback() {
+        @Override
+        public long invoke(Pointer opaque, long offset, int whence) {
+            try {
+                if ((whence & AVSEEK_SIZE) != 0)
+                    return size();
+                switch (whence & ~AVSEEK_FORCE) {
+                    case SEEK_SET:
+                        return seek(offset);
+                    case SEEK_CUR:
+                        return seek(position() + offset);
+                    case SEEK_END:
+                        long size = size();
+                        return size < 0 ? -1 : seek(size + offset);
+                    default:
+                        return -1;
+                }
+            } catch (IOException e) {
+                return AVERROR_EIO;
+            }
+        }
+    };
+    private Pointer context;
+    // View over the buffer FFmpeg last read into; FFmpeg keeps reading into the same one
+    private long viewAddress;
+    private ByteBuffer view;
+
+    /**
+     * Allocates the AVIOContext reading from this source.
+     *
+     * @return The context, to be set as the {@code pb} of an AVFormatContext.
+     * @throws IOException Thrown if the context could not be allocated.
+     * @since 1.0
+     */
+    public Pointer context() throws IOException {
+        if (context != null)
+            return context;
+        Pointer buffer = av_malloc(BUFFER_SIZE);
+        if (buffer == null)
+            throw new IOException("failed to allocate I/O buffer");
+        // Without a seek callback, FFmpeg knows not to try seeking at all
+        context = avio_alloc_context(buffer, BUFFER_SIZE, 0, null, readCallback, null, seekable() ? seekCallback : null);
+        if (context == null) {
+            av_free(buffer);
+            throw new IOException("failed to allocate I/O context");
+        }
+        return context;
+    }
+
+    private ByteBuffer view(long address, int size) {
+        if (address != viewAddress || size > view.capacity()) {
+            view = Native.getDirectByteBuffer(address, size);
+            viewAddress = address;
+        }
+        view.clear();
+        view.limit(size);
+        return view;
+    }
+
+    /**
+     * Reads data from the source.
+     *
+     * @param buffer The buffer to read into, from its position up to its limit.
+     * @return The number of bytes read, or -1 at the end of the source.
+     * @throws IOException Thrown if the source could not be read.
+     * @since 1.0
+     */
+    protected abstract int read(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Checks if the source supports {@link #seek(long)}, {@link #position()} and {@link #size()}.
+     *
+     * @return True if so, false otherwise.
+     * @since 1.0
+     */
+    protected abstract boolean seekable();
+
+    /**
+     * Moves the read position of the source.
+     *
+     * @param position The position, in bytes from the start of the source.
+     * @return The new position, or a negative value if it could not be moved.
+     * @throws IOException Thrown if the source could not be seeked.
+     * @since 1.0
+     */
+    protected abstract long seek(long position) throws IOException;
+
+    /**
+     * Fetches the read position of the source.
+     *
+     * @return The position, in bytes from the start of the source.
+     * @throws IOException Thrown if the position could not be determined.
+     * @since 1.0
+     */
+    protected abstract long position() throws IOException;
+
+    /**
+     * Fetches the size of the source.
+     *
+     * @return The size in bytes, or -1 if unknown.
+     * @throws IOException Thrown if the size could not be determined.
+     * @since 1.0
+     */
+    protected abstract long size() throws IOException;
+
+    /**
+     * Releases whatever the source reads from.
+     *
+     * @throws IOException Thrown if the source could not be closed.
+     * @since 1.0
+     */
+    protected abstract void release() throws IOException;
+
+    /**
+     * Frees the AVIOContext, and releases the source.
+     * Must only be called once the AVFormatContext reading from it is closed.
+     *
+     * @throws IOException Thrown if the source could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (context != null) {
+            // FFmpeg may have swapped the buffer it was given for another; AVIOContext.buffer follows av_class
+            av_free(context.getPointer(Pointer.SIZE));
+            av_freep(new PointerByReference(context));
+            context = null;
+        }
+        release();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * AVIOSource reading from a {@link ByteBuffer} already in memory.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class BufferSource extends AVIOSource {
+    private final ByteBuffer data;
+
+    /**
+     * Creates a BufferSource.
+     *
+     * @param data The media, from the buffer's position up to its limit. The buffer itself is left untouched.
+     * @since 1.0
+     */
+    public BufferSource(ByteBuffer data) {
+        this.data = data.slice();
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) {
+        int count = Math.min(data.remaining(), buffer.remaining());
+        if (count == 0)
+            return -1;
+        ByteBuffer chunk = data.duplicate();
+        chunk.limit(chunk.position() + count);
+        buffer.put(chunk);
+        data.position(data.position() + count);
+        return count;
+    }
+
+    @Override
+    protected boolean seekable() {
+        return true;
+    }
+
+    @Override
+    protected long seek(long position) {
+        if (position < 0 || position > data.limit())
+            return -1;
+        data.position((int) position);
+        return position;
+    }
+
+    @Override
+    protected long position() {
+        return data.position();
+    }
+
+    @Override
+    protected long size() {
+        return data.limit();
+    }
+
+    @Override
+    protected void release() {
+    }
+}
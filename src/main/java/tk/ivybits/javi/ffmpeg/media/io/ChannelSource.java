@@ -0,0 +1,75 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * AVIOSource reading from a {@link SeekableByteChannel}. Channel reads go straight into FFmpeg's I/O buffer.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ChannelSource extends AVIOSource {
+    private final SeekableByteChannel channel;
+
+    /**
+     * Creates a ChannelSource.
+     *
+     * @param channel The channel to read from, in blocking mode. Closed along with the source.
+     * @since 1.0
+     */
+    public ChannelSource(SeekableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) throws IOException {
+        return channel.read(buffer);
+    }
+
+    @Override
+    protected boolean seekable() {
+        return true;
+    }
+
+    @Override
+    protected long seek(long position) throws IOException {
+        channel.position(position);
+        return position;
+    }
+
+    @Override
+    protected long position() throws IOException {
+        return channel.position();
+    }
+
+    @Override
+    protected long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    protected void release() throws IOException {
+        channel.close();
+    }
+}
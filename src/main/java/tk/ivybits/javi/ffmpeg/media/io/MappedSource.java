@@ -0,0 +1,130 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * AVIOSource reading from a memory-mapped file.
+ * <p/>
+ * Reads are copies out of the page cache, without a system call each. Files are mapped in regions of
+ * {@link #REGION_SIZE} bytes, as they are used, so that files larger than a single mapping can hold are supported.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class MappedSource extends AVIOSource {
+    /**
+     * Size of the regions files are mapped in, in bytes.
+     */
+    public static final int REGION_SIZE = 1 << 30;
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] regions;
+    private long position;
+
+    /**
+     * Creates a MappedSource.
+     *
+     * @param file The file to map.
+     * @throws IOException Thrown if the file could not be opened.
+     * @since 1.0
+     */
+    public MappedSource(File file) throws IOException {
+        this.file = file;
+        channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            size = channel.size();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+    }
+
+    /**
+     * Fetches the file this source maps.
+     *
+     * @return The file.
+     * @since 1.0
+     */
+    public File file() {
+        return file;
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) throws IOException {
+        if (position >= size)
+            return -1;
+        int index = (int) (position / REGION_SIZE);
+        ByteBuffer region = region(index).duplicate();
+        region.position((int) (position - (long) index * REGION_SIZE));
+        // Reads never span regions; FFmpeg simply asks again for the rest
+        int count = Math.min(region.remaining(), buffer.remaining());
+        region.limit(region.position() + count);
+        buffer.put(region);
+        position += count;
+        return count;
+    }
+
+    private MappedByteBuffer region(int index) throws IOException {
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            long start = (long) index * REGION_SIZE;
+            region = regions[index] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        }
+        return region;
+    }
+
+    @Override
+    protected boolean seekable() {
+        return true;
+    }
+
+    @Override
+    protected long seek(long position) {
+        if (position < 0 || position > size)
+            return -1;
+        this.position = position;
+        return position;
+    }
+
+    @Override
+    protected long position() {
+        return position;
+    }
+
+    @Override
+    protected long size() {
+        return size;
+    }
+
+    @Override
+    protected void release() throws IOException {
+        // Mappings are unmapped once collected; closing the channel does not invalidate them
+        channel.close();
+    }
+}
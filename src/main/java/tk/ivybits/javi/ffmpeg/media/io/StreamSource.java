@@ -0,0 +1,82 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * AVIOSource reading from an {@link InputStream}. The stream cannot be seeked, so neither can the media.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class StreamSource extends AVIOSource {
+    private final InputStream in;
+    // Streams can only read into arrays; reused for every read
+    private final byte[] scratch = new byte[BUFFER_SIZE];
+    private long position;
+
+    /**
+     * Creates a StreamSource.
+     *
+     * @param in The stream to read from. Closed along with the source.
+     * @since 1.0
+     */
+    public StreamSource(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    protected int read(ByteBuffer buffer) throws IOException {
+        int read = in.read(scratch, 0, Math.min(buffer.remaining(), scratch.length));
+        if (read > 0) {
+            buffer.put(scratch, 0, read);
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    protected boolean seekable() {
+        return false;
+    }
+
+    @Override
+    protected long seek(long position) {
+        return -1;
+    }
+
+    @Override
+    protected long position() {
+        return position;
+    }
+
+    @Override
+    protected long size() {
+        return -1;
+    }
+
+    @Override
+    protected void release() throws IOException {
+        in.close();
+    }
+}
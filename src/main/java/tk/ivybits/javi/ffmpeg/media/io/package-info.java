@@ -0,0 +1,27 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Custom FFmpeg input, reading media from Java sources rather than paths or URLs.
+ * <p/>
+ * <b>Should not be used directly. Very volatile.</b>
+ *
+ * @since 1.0
+ * @version 1.0
+ */
+package tk.ivybits.javi.ffmpeg.media.io;
@@ -0,0 +1,248 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import tk.ivybits.javi.format.PixelFormat;
+import tk.ivybits.javi.format.SampleFormat;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.MediaInfo;
+import tk.ivybits.javi.media.stream.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Media container described by cached probe results.
+ * <p/>
+ * Streams and length are answered from the probe results alone; the file is only opened once it is streamed,
+ * demuxed or indexed. Streams of this container may be passed to the streams created from it as usual.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class FFCachedMedia implements Media {
+    public final MediaInfo info;
+    private final File file;
+    private final ArrayList<CachedVideoStream> videoStreams = new ArrayList<CachedVideoStream>();
+    private final ArrayList<CachedAudioStream> audioStreams = new ArrayList<CachedAudioStream>();
+    private final ArrayList<CachedSubtitleStream> subtitleStreams = new ArrayList<CachedSubtitleStream>();
+    private FFMedia delegate;
+
+    /**
+     * Creates a FFCachedMedia object for a file.
+     *
+     * @param file The file.
+     * @param info The probe results of the file.
+     * @since 1.0
+     */
+    public FFCachedMedia(File file, MediaInfo info) {
+        this.file = file;
+        this.info = info;
+        for (MediaInfo.StreamInfo stream : info.streams) {
+            switch (stream.type) {
+                case STREAM_VIDEO:
+                    videoStreams.add(new CachedVideoStream(stream));
+                    break;
+                case STREAM_AUDIO:
+                    audioStreams.add(new CachedAudioStream(stream));
+                    break;
+                case STREAM_SUBTITLE:
+                    subtitleStreams.add(new CachedSubtitleStream(stream));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Opens the file, if not already open.
+     *
+     * @return The container of the file.
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    private synchronized FFMedia delegate() throws IOException {
+        if (delegate == null) {
+            delegate = new FFMedia(file);
+            delegate.owner = this;
+        }
+        return delegate;
+    }
+
+    /**
+     * Opens the file, if not already open, for an operation that cannot throw {@link IOException}.
+     *
+     * @return The container of the file.
+     * @throws IllegalStateException Thrown if the file could not be opened, with the {@link IOException} as its cause.
+     */
+    private FFMedia opened() {
+        try {
+            return delegate();
+        } catch (IOException e) {
+            // Not an FFmpeg error, so there is no error code for a StreamException to carry
+            throw new IllegalStateException("failed to open media: " + file, e);
+        }
+    }
+
+    @Override
+    public List<? extends VideoStream> videoStreams() {
+        return Collections.unmodifiableList(videoStreams);
+    }
+
+    @Override
+    public List<? extends AudioStream> audioStreams() {
+        return Collections.unmodifiableList(audioStreams);
+    }
+
+    @Override
+    public List<? extends SubtitleStream> subtitleStreams() {
+        return Collections.unmodifiableList(subtitleStreams);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException Thrown if the file could not be opened, with the {@link IOException} as its cause.
+     */
+    @Override
+    public MediaStream.Builder stream() {
+        return opened().stream();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException Thrown if the file could not be opened, with the {@link IOException} as its cause.
+     */
+    @Override
+    public PacketStream.Builder packets() {
+        return opened().packets();
+    }
+
+    @Override
+    public void index() throws IOException {
+        delegate().index();
+    }
+
+    @Override
+    public long length() {
+        return info.length;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (delegate != null) {
+            delegate.close();
+            delegate = null;
+        }
+    }
+
+    /**
+     * Stream described by probe results.
+     */
+    private class CachedStream implements Stream {
+        protected final MediaInfo.StreamInfo info;
+
+        CachedStream(MediaInfo.StreamInfo info) {
+            this.info = info;
+        }
+
+        @Override
+        public Media container() {
+            return FFCachedMedia.this;
+        }
+
+        @Override
+        public Type type() {
+            return info.type;
+        }
+
+        @Override
+        public Locale language() {
+            return info.language;
+        }
+
+        @Override
+        public int index() {
+            return info.index;
+        }
+
+        @Override
+        public String codecName() {
+            return info.codecName;
+        }
+
+        @Override
+        public String longCodecName() {
+            return info.longCodecName;
+        }
+
+        @Override
+        public void close() {
+            // Nothing was opened for this stream; decoders belong to the streams of the opened file
+        }
+    }
+
+    private class CachedVideoStream extends CachedStream implements VideoStream {
+        CachedVideoStream(MediaInfo.StreamInfo info) {
+            super(info);
+        }
+
+        @Override
+        public int width() {
+            return info.width;
+        }
+
+        @Override
+        public int height() {
+            return info.height;
+        }
+
+        @Override
+        public double framerate() {
+            return info.framerate;
+        }
+
+        @Override
+        public PixelFormat pixelFormat() {
+            if (info.pixelFormat == null)
+                throw new IllegalStateException();
+            return info.pixelFormat;
+        }
+    }
+
+    private class CachedAudioStream extends CachedStream implements AudioStream {
+        CachedAudioStream(MediaInfo.StreamInfo info) {
+            super(info);
+        }
+
+        @Override
+        public SampleFormat audioFormat() {
+            return info.audioFormat;
+        }
+    }
+
+    private class CachedSubtitleStream extends CachedStream implements SubtitleStream {
+        CachedSubtitleStream(MediaInfo.StreamInfo info) {
+            super(info);
+        }
+    }
+}
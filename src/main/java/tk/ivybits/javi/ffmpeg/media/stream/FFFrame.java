@@ -0,0 +1,105 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.Native;
+import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.avutil.AVFrame;
+import tk.ivybits.javi.media.stream.Frame;
+import tk.ivybits.javi.media.stream.StreamException;
+
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.*;
+
+/**
+ * Video frame backed by a reference to a refcounted AVFrame.
+ * <p/>
+ * Retaining takes out another reference with {@code av_frame_ref}, so the decoded data is shared rather than copied.
+ */
+class FFFrame extends Frame {
+    final AVFrame frame;
+    // Ring the frame is a slot of, or null if it is a reference retained by a consumer
+    private final FrameRing ring;
+    private boolean released;
+    // Presentation time in milliseconds and duration in nanoseconds, as passed on to the handler
+    long time, duration;
+
+    FFFrame(AVFrame frame, FrameRing ring) {
+        super(0, 1);
+        this.frame = frame;
+        this.ring = ring;
+    }
+
+    /**
+     * Points the planes of this frame at the data the AVFrame currently references.
+     *
+     * @return This frame.
+     */
+    FFFrame load() {
+        int i = 0;
+        for (; i < AVFrame.AV_NUM_DATA_POINTERS && frame.getLinesize(i) != 0; i++) ;
+        reset(i, 1);
+        int height = frame.getHeight();
+        for (int p = 0; p != i; p++) {
+            int l = frame.getLinesize(p);
+            // Fresh views every time: a consumer on another thread may still be reading the previous ones
+            plane(p).set(Native.getDirectByteBuffer(frame.getData(p), l * height), l);
+        }
+        released = false;
+        return this;
+    }
+
+    @Override
+    public Frame retain() {
+        if (released)
+            throw new IllegalStateException("frame already released");
+        AVFrame reference = new AVFrame(av_frame_alloc());
+        int err = av_frame_ref(reference.getPointer(), frame.getPointer());
+        if (err < 0) {
+            av_frame_free(new PointerByReference(reference.getPointer()));
+            throw new StreamException("failed to reference frame: " + err, err);
+        }
+        FFFrame retained = new FFFrame(reference, null).load();
+        retained.time = time;
+        retained.duration = duration;
+        return retained;
+    }
+
+    /**
+     * Gives up a retained reference. Releasing it again has no effect.
+     * <p/>
+     * Slots of the read-ahead ring belong to the stream, which recycles them once the handler returns; releasing
+     * one from a handler has no effect either.
+     */
+    @Override
+    public void release() {
+        if (ring != null || released)
+            return;
+        released = true;
+        av_frame_free(new PointerByReference(frame.getPointer()));
+    }
+
+    /**
+     * Returns this slot to its ring, once presented or dropped.
+     */
+    void recycle() {
+        released = true;
+        ring.recycle(this);
+    }
+}
@@ -20,21 +20,38 @@ package tk.ivybits.javi.ffmpeg.media.stream;
 
 import com.sun.jna.Pointer;
 import com.sun.jna.ptr.PointerByReference;
-import tk.ivybits.javi.ffmpeg.LibAVFormat;
+import tk.ivybits.javi.ffmpeg.media.io.AVIOSource;
+import tk.ivybits.javi.ffmpeg.media.io.BufferSource;
+import tk.ivybits.javi.ffmpeg.media.io.ChannelSource;
+import tk.ivybits.javi.ffmpeg.media.io.MappedSource;
+import tk.ivybits.javi.ffmpeg.media.io.StreamSource;
+import tk.ivybits.javi.ffmpeg.avcodec.AVPacket;
 import tk.ivybits.javi.ffmpeg.avformat.AVFormatContext;
 import tk.ivybits.javi.ffmpeg.avformat.AVStream;
 import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.OpenOptions;
 import tk.ivybits.javi.media.stream.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static tk.ivybits.javi.ffmpeg.LibAVFormat.avformat_close_input;
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.avcodec_copy_context;
+import static tk.ivybits.javi.ffmpeg.LibAVFormat.*;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_dict_free;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_dict_set;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.AV_NOPTS_VALUE;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_free;
+import static tk.ivybits.javi.ffmpeg.avcodec.AVDiscard.AVDISCARD_ALL;
 
 /**
  * FFmpeg-backed media container.
@@ -43,10 +60,27 @@ import static tk.ivybits.javi.ffmpeg.LibAVFormat.avformat_close_input;
  * @since 1.0
  */
 public class FFMedia implements Media {
+    private static final int AVERROR_ENOMEM = -12;
     public AVFormatContext formatContext;
     public ArrayList<FFVideoStream> videoStreams = new ArrayList<FFVideoStream>();
     public ArrayList<FFAudioStream> audioStreams = new ArrayList<FFAudioStream>();
     public ArrayList<FFSubtitleStream> subtitleStreams = new ArrayList<FFSubtitleStream>();
+    public KeyframeIndex keyframeIndex;
+    // Path or URL the media was opened from, or null if read from a custom source other than a mapped file
+    private final String source;
+    private final OpenOptions options;
+    private final AVIOSource io;
+    // Container this one is a session of, or null if opened by the user
+    private final FFMedia parent;
+    // Number of MediaStreams playing this container itself rather than a session of it, and whether any ever did
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile boolean played;
+    // Aborts blocking I/O on the format context; referenced from native code, so it must live as long as the media
+    final Interrupter interrupter = new Interrupter();
+    // Time spent opening the container and probing its streams, in nanoseconds
+    public long openTime, probeTime;
+    // Container handed out to users in place of this one, whose streams stand in for ours
+    Media owner = this;
 
     /**
      * Creates a FFMedia object sourced from a {@code File}.
@@ -56,7 +90,19 @@ public class FFMedia implements Media {
      * @since 1.0
      */
     public FFMedia(File source) throws IOException {
-        this(source.getAbsolutePath());
+        this(source, OpenOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a FFMedia object sourced from a {@code File}.
+     *
+     * @param source  The media source.
+     * @param options The options to open the source with.
+     * @throws IOException Thrown if the source could not be opened (or doesn't exist)
+     * @since 1.0
+     */
+    public FFMedia(File source, OpenOptions options) throws IOException {
+        this(source.getAbsolutePath(), options);
     }
 
     /**
@@ -67,23 +113,334 @@ public class FFMedia implements Media {
      * @since 1.0
      */
     public FFMedia(URI source) throws IOException {
-        this(source.toASCIIString());
+        this(source, OpenOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a FFMedia object sourced from a pointing {@code URL}.
+     *
+     * @param source  The URL of the media source.
+     * @param options The options to open the source with.
+     * @throws IOException Thrown if the source could not be opened (or doesn't exist)
+     * @since 1.0
+     */
+    public FFMedia(URI source, OpenOptions options) throws IOException {
+        this(source.toASCIIString(), options);
+    }
+
+    /**
+     * Creates a FFMedia object sourced from a {@code SeekableByteChannel}.
+     *
+     * @param source The channel to read the media from. Closed along with the media.
+     * @throws IOException Thrown if the source could not be opened.
+     * @since 1.0
+     */
+    public FFMedia(SeekableByteChannel source) throws IOException {
+        this(new ChannelSource(source));
+    }
+
+    /**
+     * Creates a FFMedia object sourced from a {@code ByteBuffer}.
+     *
+     * @param source The media, from the buffer's position up to its limit.
+     * @throws IOException Thrown if the source could not be opened.
+     * @since 1.0
+     */
+    public FFMedia(ByteBuffer source) throws IOException {
+        this(new BufferSource(source));
+    }
+
+    /**
+     * Creates a FFMedia object sourced from an {@code InputStream}.
+     * <p/>
+     * Streams cannot be rewound, so neither can media read from them be seeked.
+     *
+     * @param source The stream to read the media from. Closed along with the media.
+     * @throws IOException Thrown if the source could not be opened.
+     * @since 1.0
+     */
+    public FFMedia(InputStream source) throws IOException {
+        this(new StreamSource(source));
+    }
+
+    /**
+     * Creates a FFMedia object read through a custom AVIOContext.
+     *
+     * @param source The source to read the media from. Closed along with the media.
+     * @throws IOException Thrown if the source could not be opened.
+     * @since 1.0
+     */
+    public FFMedia(AVIOSource source) throws IOException {
+        this(source, OpenOptions.DEFAULT);
     }
 
-    private FFMedia(String source) throws IOException {
+    /**
+     * Creates a FFMedia object read through a custom AVIOContext.
+     * <p/>
+     * Media read from a {@link MappedSource} can be indexed and played by several streams at once, like media
+     * opened from a path; sessions map the file again.
+     *
+     * @param source  The source to read the media from. Closed along with the media.
+     * @param options The options to open the source with.
+     * @throws IOException Thrown if the source could not be opened.
+     * @since 1.0
+     */
+    public FFMedia(AVIOSource source, OpenOptions options) throws IOException {
+        this.source = source instanceof MappedSource ? ((MappedSource) source).file().getAbsolutePath() : null;
+        this.options = options;
+        this.io = source;
+        this.parent = null;
+        boolean opened = false;
+        try {
+            Pointer format = inputFormat(options);
+            PointerByReference ppFormatCtx = new PointerByReference(customContext(source));
+            // avformat_open_input frees the format context itself on failure
+            int err = openInput(ppFormatCtx, "", format, options);
+            if (err != 0)
+                throw openFailure("failed to open media", err);
+            init(ppFormatCtx.getValue());
+            opened = true;
+        } finally {
+            if (!opened)
+                closeSource();
+        }
+    }
+
+    private FFMedia(String source, OpenOptions options) throws IOException {
         PointerByReference ppFormatCtx = new PointerByReference();
 
         source = URLDecoder.decode(source, "UTF-8");
-        if (LibAVFormat.avformat_open_input(ppFormatCtx, source, null, null) != 0)
-            throw new IOException("failed to open video file: " + source);
+        this.source = source;
+        this.options = options;
+        this.io = null;
+        this.parent = null;
+        int err = openInput(ppFormatCtx, source, inputFormat(options), options);
+        if (err != 0)
+            throw openFailure("failed to open video file: " + source, err);
+        init(ppFormatCtx.getValue());
+    }
+
+    /**
+     * Opens a session of a container: a demuxer of its own, whose streams have decoder contexts of their own.
+     * <p/>
+     * The format is not probed again, and neither are the streams: their codec parameters are copied over from
+     * the parent, unless the format only reveals its streams while being probed.
+     *
+     * @param parent The container.
+     * @throws IOException Thrown if the container could not be reopened.
+     */
+    private FFMedia(FFMedia parent) throws IOException {
+        this.source = parent.source;
+        this.options = parent.options;
+        this.io = parent.io instanceof MappedSource ? new MappedSource(((MappedSource) parent.io).file()) : null;
+        this.parent = parent;
+        this.owner = parent.owner;
+        try {
+            PointerByReference ppFormatCtx = new PointerByReference(io != null ? customContext(io) : null);
+            int err = openInput(ppFormatCtx, io != null ? "" : source, parent.formatContext.iformat, options);
+            if (err != 0)
+                throw openFailure("failed to reopen video file: " + source, err);
+            formatContext = new AVFormatContext(ppFormatCtx.getValue());
+            if (formatContext.nb_streams != parent.formatContext.nb_streams) {
+                // Headerless formats only reveal their streams while being probed
+                init(ppFormatCtx.getValue());
+                return;
+            }
+        } finally {
+            // Opening and init() free the context themselves on failure, leaving only the source to close
+            if (formatContext == null)
+                closeSource();
+        }
+        interrupter.disarm();
 
-        formatContext = new AVFormatContext(ppFormatCtx.getValue());
-        if (LibAVFormat.av_find_stream_info(formatContext.getPointer()) < 0)
-            throw new IOException("failed to find stream info");
-        formatContext.read();
+        boolean copied = false;
+        try {
+            for (int i = 0; i < formatContext.nb_streams; ++i) {
+                Pointer stream = formatContext.streams.getPointer(i * Pointer.SIZE);
+                AVStream from = new AVStream(parent.formatContext.streams.getPointer(i * Pointer.SIZE));
+                AVStream to = new AVStream(stream);
+                // avcodec_copy_context overwrites the extradata pointer the demuxer set, without freeing it in
+                // some versions and freeing it in others; either way it must not be left dangling
+                if (to.codec.extradata != null) {
+                    av_free(to.codec.extradata);
+                    to.codec.extradata = null;
+                    to.codec.writeField("extradata");
+                }
+                int err = avcodec_copy_context(to.codec.getPointer(), from.codec.getPointer());
+                if (err < 0)
+                    throw new IOException("failed to copy codec parameters: " + err);
+                // Timing is otherwise only worked out while probing
+                to.start_time = from.start_time;
+                to.writeField("start_time");
+                to.duration = from.duration;
+                to.writeField("duration");
+                to.r_frame_rate = from.r_frame_rate;
+                to.writeField("r_frame_rate");
+                to.avg_frame_rate = from.avg_frame_rate;
+                to.writeField("avg_frame_rate");
+            }
+            formatContext.start_time = parent.formatContext.start_time;
+            formatContext.writeField("start_time");
+            formatContext.duration = parent.formatContext.duration;
+            formatContext.writeField("duration");
+            addStreams();
+            copied = true;
+        } finally {
+            if (!copied)
+                close();
+        }
+    }
 
+    /**
+     * Allocates a format context reading through a custom source.
+     *
+     * @param io The source.
+     * @return The AVFormatContext, yet to be opened.
+     * @throws IOException Thrown if the context could not be set up.
+     */
+    private static Pointer customContext(AVIOSource io) throws IOException {
+        Pointer context = avformat_alloc_context();
+        if (context == null)
+            throw new IOException("failed to allocate format context");
+        try {
+            AVFormatContext formatContext = new AVFormatContext(context);
+            formatContext.pb = io.context();
+            formatContext.writeField("pb");
+            // Keeps avformat_close_input from closing a context it did not open
+            formatContext.flags |= AVFMT_FLAG_CUSTOM_IO;
+            formatContext.writeField("flags");
+        } catch (IOException e) {
+            avformat_free_context(context);
+            throw e;
+        }
+        return context;
+    }
+
+    /**
+     * Looks up the format hinted at by a set of options.
+     *
+     * @param options The options.
+     * @return The AVInputFormat, or null if no format was specified.
+     * @throws IOException Thrown if FFmpeg does not know the format.
+     */
+    static Pointer inputFormat(OpenOptions options) throws IOException {
+        if (options.format == null)
+            return null;
+        Pointer format = av_find_input_format(options.format);
+        if (format == null)
+            throw new IOException("unknown format: " + options.format);
+        return format;
+    }
+
+    /**
+     * Opens a container, recording the time it took.
+     * <p/>
+     * The open timeout starts counting down, until disarmed once the container has been probed.
+     *
+     * @param ppFormatCtx The format context to open; allocated if null.
+     * @param url         The URL of the container.
+     * @param format      The format of the container, or null to detect it.
+     * @param options     The options to open the container with.
+     * @return The result of {@code avformat_open_input}.
+     */
+    private int openInput(PointerByReference ppFormatCtx, String url, Pointer format, OpenOptions options) {
+        // Allocated up front, so that the interrupt callback covers opening as well
+        if (ppFormatCtx.getValue() == null) {
+            Pointer context = avformat_alloc_context();
+            if (context == null)
+                return AVERROR_ENOMEM;
+            ppFormatCtx.setValue(context);
+        }
+        interrupter.install(new AVFormatContext(ppFormatCtx.getValue()), options);
+        interrupter.arm(options.openTimeout);
+
+        PointerByReference dictionary = new PointerByReference();
+        try {
+            probeOptions(dictionary, options);
+            long start = System.nanoTime();
+            int err = avformat_open_input(ppFormatCtx, url, format, dictionary);
+            openTime = System.nanoTime() - start;
+            return err;
+        } finally {
+            // Holds whatever options were not consumed
+            av_dict_free(dictionary);
+        }
+    }
+
+    /**
+     * Fills a dictionary with the probing options of a set of options. They are private to the demuxer and I/O
+     * layer, so they can only be passed to {@code avformat_open_input} this way.
+     *
+     * @param dictionary The dictionary, to be freed by the caller.
+     * @param options    The options.
+     */
+    static void probeOptions(PointerByReference dictionary, OpenOptions options) {
+        if (options.probeSize >= 0)
+            av_dict_set(dictionary, "probesize", Integer.toString(options.probeSize), 0);
+        if (options.analyzeDuration >= 0)
+            av_dict_set(dictionary, "analyzeduration", Long.toString(options.analyzeDuration * 1000), 0);
+        if (options.fpsProbeSize >= 0)
+            av_dict_set(dictionary, "fpsprobesize", Integer.toString(options.fpsProbeSize), 0);
+        if (options.skipInitialBytes > 0)
+            av_dict_set(dictionary, "skip_initial_bytes", Integer.toString(options.skipInitialBytes), 0);
+    }
+
+    /**
+     * Builds the exception for a container that failed to open, and stops the open timeout.
+     *
+     * @param message The message, should opening not have timed out.
+     * @param err     The error opening failed with.
+     * @return The exception: an {@link InterruptedIOException} if opening was aborted for timing out.
+     */
+    private IOException openFailure(String message, int err) {
+        if (interrupter.disarm() && err == Interrupter.AVERROR_EXIT)
+            return new InterruptedIOException("timed out after " + options.openTimeout + "ms: " + message);
+        return new IOException(message + ": " + err);
+    }
+
+    /**
+     * Reads the stream information of a freshly opened container. The container is closed if that fails, or if
+     * any of its streams cannot be wrapped.
+     *
+     * @param context The AVFormatContext of the container.
+     * @throws IOException Thrown if no stream information could be found.
+     */
+    private void init(Pointer context) throws IOException {
+        AVFormatContext formatContext = new AVFormatContext(context);
+        boolean ready = false;
+        try {
+            long start = System.nanoTime();
+            int err = av_find_stream_info(formatContext.getPointer());
+            probeTime = System.nanoTime() - start;
+            if (err < 0)
+                throw openFailure("failed to find stream info", err);
+            interrupter.disarm();
+            formatContext.read();
+            this.formatContext = formatContext;
+            addStreams();
+            ready = true;
+        } finally {
+            if (!ready) {
+                interrupter.disarm();
+                // Nothing was opened for the streams wrapped so far
+                videoStreams.clear();
+                audioStreams.clear();
+                subtitleStreams.clear();
+                avformat_close_input(new PointerByReference(context));
+                this.formatContext = null;
+            }
+        }
+    }
+
+    /**
+     * Wraps the streams of the container, now that their codec parameters are known.
+     */
+    private void addStreams() {
         for (int i = 0; i < formatContext.nb_streams; ++i) {
             AVStream stream = new AVStream(formatContext.streams.getPointer(i * Pointer.SIZE));
+            // Nothing is demuxed until a MediaStream selects the stream
+            stream.discard = AVDISCARD_ALL;
+            stream.writeField("discard");
             Stream.Type type = Stream.Type.values()[stream.codec.codec_type];
 
             switch (type) {
@@ -120,6 +477,162 @@ public class FFMedia implements Media {
         return new FFMediaStream.Builder(this);
     }
 
+    @Override
+    public PacketStream.Builder packets() {
+        return new FFPacketStream.Builder(this);
+    }
+
+    /**
+     * Fetches every stream of this container exposed through {@link #videoStreams()}, {@link #audioStreams()} or
+     * {@link #subtitleStreams()}.
+     *
+     * @return The streams.
+     */
+    List<FFStream> streams() {
+        ArrayList<FFStream> streams = new ArrayList<FFStream>(videoStreams.size() + audioStreams.size() + subtitleStreams.size());
+        streams.addAll(videoStreams);
+        streams.addAll(audioStreams);
+        streams.addAll(subtitleStreams);
+        return streams;
+    }
+
+    /**
+     * Reads the next packet of the container, giving up once the read timeout passes.
+     *
+     * @param packet The packet to read into.
+     * @return The result of {@code av_read_frame}.
+     * @throws StreamException Thrown if the read timed out.
+     */
+    int readFrame(AVPacket packet) {
+        if (options.readTimeout <= 0)
+            return av_read_frame(formatContext.getPointer(), packet.getPointer());
+        interrupter.arm(options.readTimeout);
+        int err = av_read_frame(formatContext.getPointer(), packet.getPointer());
+        // Reads that failed for reasons of their own are reported as such, and cancelled ones end the media
+        if (interrupter.disarm() && err == Interrupter.AVERROR_EXIT && !interrupter.isCancelled())
+            throw new StreamException("read timed out after " + options.readTimeout + "ms", err);
+        return err;
+    }
+
+    /**
+     * Obtains a container for a single MediaStream to demux and decode on its own, so that several MediaStreams
+     * can play the container at once without corrupting each other's state.
+     * <p/>
+     * The first stream gets this very container, rewound if played before, so a lone stream costs nothing extra
+     * and its decoder settings show through the streams users hold. Streams running alongside it get sessions:
+     * the container reopened. Containers read from custom sources other than mapped files cannot be reopened,
+     * and are shared instead; once cancelled, they stay cancelled until no stream is left playing them.
+     *
+     * @return The container, to be handed back to {@link #release(FFMedia)} once done with.
+     * @throws IOException Thrown if the container could not be reopened.
+     */
+    FFMedia session() throws IOException {
+        if (users.compareAndSet(0, 1)) {
+            // Nobody else is reading, so media a stream cancelled may be read again
+            interrupter.reset();
+            if (rewind())
+                return this;
+            users.decrementAndGet();
+        }
+        if (source != null)
+            return new FFMedia(this);
+        users.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Hands back a container obtained from {@link #session()}, once its stream is done with it.
+     *
+     * @param session The container.
+     */
+    void release(FFMedia session) {
+        if (session != this) {
+            session.close();
+            return;
+        }
+        // The stream may have aborted I/O on its way out; other streams of a shared source were cut off either way
+        if (source != null)
+            interrupter.reset();
+        users.decrementAndGet();
+    }
+
+    /**
+     * Checks if this container can be reopened, so that no other stream ever shares its demuxer with a MediaStream.
+     *
+     * @return True if so, false otherwise.
+     */
+    boolean reopenable() {
+        return source != null;
+    }
+
+    /**
+     * Moves the demuxer back to the start of this container if a stream played it before, and marks it as played.
+     *
+     * @return True if the demuxer is at the start, false if it could not be moved there.
+     */
+    private boolean rewind() {
+        if (!played) {
+            played = true;
+            return true;
+        }
+        long start = formatContext.start_time != AV_NOPTS_VALUE ? formatContext.start_time : 0;
+        return av_seek_frame(formatContext.getPointer(), -1, start, AVSEEK_FLAG_BACKWARD) >= 0;
+    }
+
+    /**
+     * Fetches the keyframe index of this container, or of the container this is a session of.
+     *
+     * @return The index, or null if not indexed.
+     */
+    KeyframeIndex keyframeIndex() {
+        if (keyframeIndex == null && parent != null)
+            return parent.keyframeIndex();
+        return keyframeIndex;
+    }
+
+    /**
+     * Maps a stream handed in by a user to the stream of this container it stands for.
+     *
+     * @param stream  The stream, belonging to this container, the container it is a session of, or their owner.
+     * @param streams The streams of this container of the same type.
+     * @return The stream of this container.
+     * @throws IllegalArgumentException Thrown if the stream belongs to another container.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends FFStream> T resolve(Stream stream, List<T> streams) {
+        if (stream.container() == this)
+            return (T) stream;
+        if (stream.container() == owner || (parent != null && stream.container() == parent)) {
+            for (T candidate : streams) {
+                if (candidate.index() == stream.index())
+                    return candidate;
+            }
+        }
+        throw new IllegalArgumentException("stream not from same container");
+    }
+
+    /**
+     * Checks if a stream belongs to this container, the container it is a session of, or their owner.
+     *
+     * @param stream The stream.
+     * @return True if so, false otherwise.
+     */
+    boolean owns(Stream stream) {
+        return stream.container() == this || stream.container() == owner
+                || (parent != null && stream.container() == parent);
+    }
+
+    @Override
+    public void index() throws IOException {
+        if (keyframeIndex() != null)
+            return;
+        if (source == null)
+            throw new IOException("only media opened from a path, URL or mapped file can be indexed");
+        File file = new File(source);
+        // Only local files can be keyed by size and modification time; anything else is scanned every time
+        keyframeIndex = file.isFile() ? KeyframeIndex.of(file, options) : KeyframeIndex.scan(source, options);
+    }
+
     @Override
     public long length() {
         if (formatContext.duration == Long.MIN_VALUE)
@@ -129,8 +642,28 @@ public class FFMedia implements Media {
 
     @Override
     public void close() {
+        for (FFStream stream : videoStreams)
+            stream.close();
+        for (FFStream stream : audioStreams)
+            stream.close();
+        for (FFStream stream : subtitleStreams)
+            stream.close();
         if (formatContext != null) {
             avformat_close_input(new PointerByReference(formatContext.getPointer()));
         }
+        closeSource();
+    }
+
+    /**
+     * Closes the custom source the container is read through, if any.
+     */
+    private void closeSource() {
+        if (io != null) {
+            try {
+                io.close();
+            } catch (IOException ignored) {
+                // The media is closed either way; nothing left to read from the source
+            }
+        }
     }
 }
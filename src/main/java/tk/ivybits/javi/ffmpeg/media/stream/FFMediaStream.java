@@ -32,20 +32,30 @@ import tk.ivybits.javi.media.handler.SubtitleHandler;
 import tk.ivybits.javi.media.stream.*;
 import tk.ivybits.javi.media.subtitle.BitmapSubtitle;
 import tk.ivybits.javi.media.subtitle.DonkeyParser;
+import tk.ivybits.javi.media.subtitle.Subtitle;
 import tk.ivybits.javi.media.subtitle.TextSubtitle;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 import java.awt.image.IndexColorModel;
 import java.io.IOException;
-import java.util.concurrent.Semaphore;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static tk.ivybits.javi.ffmpeg.LibAVCodec.*;
-import static tk.ivybits.javi.ffmpeg.LibAVFormat.av_read_frame;
-import static tk.ivybits.javi.ffmpeg.LibAVFormat.av_seek_frame;
+import static tk.ivybits.javi.ffmpeg.avcodec.AVDiscard.*;
+import static tk.ivybits.javi.ffmpeg.LibAVFormat.*;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.AV_NOPTS_VALUE;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_frame_move_ref;
 import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_frame_unref;
 import static tk.ivybits.javi.format.SampleFormat.Encoding.isPlanar;
-import static tk.ivybits.javi.media.stream.Frame.Plane;
 
 /**
  * FFmpeg MediaStream implementation.
@@ -56,7 +66,16 @@ import static tk.ivybits.javi.media.stream.Frame.Plane;
  * @since 1.0
  */
 public class FFMediaStream implements MediaStream {
+    // Number of distinct buffer addresses remembered per stream type when reusing frames. Video decoders keep
+    // several reference frames of up to four planes in their pools; audio decoders far fewer
+    private static final int VIDEO_VIEW_CACHE_SIZE = 64;
+    private static final int AUDIO_VIEW_CACHE_SIZE = 32;
+    private static final long NO_SEEK = Long.MIN_VALUE;
+    // How long the decoder waits on a full read-ahead ring before checking whether the stream was stopped
+    private static final int READ_AHEAD_TIMEOUT = 100;
     public final FFMedia media;
+    // Container the stream was created for; media is either that or a session of it
+    private final FFMedia container;
     public AudioHandler audioHandler;
     public FrameHandler videoHandler;
     public SubtitleHandler subtitleHandler;
@@ -65,214 +84,849 @@ public class FFMediaStream implements MediaStream {
     public FFSubtitleStream subtitleStream;
 
     public AVFrame.ByReference pFrame;
+    // Packet without data, which makes decoders give up the frames they still hold at the end of the media
+    private final AVPacket drainPacket;
 
     public DonkeyParser[] donkeyParsers;
     public AVSubtitle pSubtitle;
 
     public AVCodec videoCodec, audioCodec, subtitleCodec;
-    public boolean playing = false;
+    public volatile boolean playing = false;
     public boolean started;
-    public long time;
-    private final Semaphore mutex = new Semaphore(1);
-
-    FFMediaStream(FFMedia media, AudioHandler audioHandler, FrameHandler videoHandler,
-                  SubtitleHandler subtitleHandler) throws IOException {
-        this.media = media;
-        this.audioHandler = audioHandler;
-        this.videoHandler = videoHandler;
-        this.subtitleHandler = subtitleHandler;
+    public final MediaClock clock = new MediaClock();
+    // Position decoded frames are dropped before, in milliseconds
+    protected volatile long seekTarget = Long.MIN_VALUE;
+    // Seek requested by the user, yet to be carried out by the decode thread
+    private final AtomicLong pendingSeek = new AtomicLong(NO_SEEK);
+    // When the pending seek was requested, and when the seek awaiting its first frame was, in nanoseconds
+    private volatile long seekRequested, seekIssued;
+    private volatile long seekLatency = -1;
+    public final int threadCount;
+    public final ThreadType threadType;
+    public final boolean reuseFrames;
+    public final boolean keyframesOnly;
+    public final boolean fastDecode;
+    public final int lowres;
+    // Recycled frames and buffer views. Each is only ever touched by the thread decoding its stream type
+    private final Frame videoFrame = new Frame(0, 1), audioFrame = new Frame(0, 1);
+    private final ViewCache videoViews, audioViews;
+    public final int readAhead;
+    // Read-ahead ring and the thread presenting from it, if reading ahead
+    private FrameRing ring;
+    private Presenter presenter;
+    private volatile RuntimeException presenterFailure;
+    // Presentation time of the last video frame decoded, in milliseconds
+    private long videoTime = -1;
+    protected final AtomicReference<State> state = new AtomicReference<State>(State.PLAYING);
+    // Threads parked in awaitPlaying(), to be woken on any state change that lets them carry on
+    private final Set<Thread> parked = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    // Held for as long as anything is decoding, so that close() never frees what the decoders are using
+    private final ReentrantLock decoding = new ReentrantLock();
+    // Whether close() was called, and whether everything has been freed since (guarded by decoding)
+    private volatile boolean closing;
+    private boolean released;
+    // State of nextFrame(); only touched by the pulling thread
+    private boolean pulling;
+    private AVPacket pullPacket;
+    private IntByReference pullFrameFinished;
+    private int pullAudioRemaining;
+    private final ArrayDeque<DecodedFrame> pulled = new ArrayDeque<DecodedFrame>();
+    // Recycled along with the frames they hold, when reusing frames. Each decode call yields at most one frame,
+    // and nextFrame() returns as soon as it does, so neither is ever queued twice
+    private DecodedFrame pulledAudio, pulledVideo;
+    // State of step(); only touched by the stepping thread of the moment
+    private boolean stepping, stepped;
+    private AVPacket stepPacket;
+    private IntByReference stepFrameFinished;
+
+    FFMediaStream(Builder builder) throws IOException {
+        // A demuxer and decoders of our own, so that other streams of the same media cannot disturb ours
+        this.container = builder.media;
+        this.media = container.session();
+        this.audioHandler = builder.audioHandler;
+        this.videoHandler = builder.videoHandler;
+        this.subtitleHandler = builder.subtitleHandler;
+        this.threadCount = builder.threadCount;
+        this.threadType = builder.threadType;
+        this.reuseFrames = builder.reuseFrames;
+        this.keyframesOnly = builder.keyframesOnly;
+        this.fastDecode = builder.fastDecode;
+        this.lowres = builder.lowres;
+        this.readAhead = builder.readAhead;
+        videoViews = reuseFrames ? new ViewCache(VIDEO_VIEW_CACHE_SIZE) : null;
+        audioViews = reuseFrames ? new ViewCache(AUDIO_VIEW_CACHE_SIZE) : null;
         pFrame = avcodec_alloc_frame();
+        // Structures are allocated zeroed, and av_init_packet leaves data and size alone
+        drainPacket = new AVPacket();
+        av_init_packet(drainPacket.getPointer());
 
         donkeyParsers = new DonkeyParser[media.formatContext.nb_streams];
     }
 
     @Override
     public VideoStream setVideoStream(VideoStream stream) {
-        if (stream.container() != media)
-            throw new IllegalArgumentException("stream not from same container");
+        FFVideoStream selected = media.resolve(stream, media.videoStreams);
         VideoStream pre = videoStream;
 
-        videoStream = (FFVideoStream) stream;
+        select(videoStream, selected);
+        videoStream = selected;
         videoCodec = videoStream.codec;
         return pre;
     }
 
     @Override
     public AudioStream setAudioStream(AudioStream stream) {
-        if (stream.container() != media)
-            throw new IllegalArgumentException("stream not from same container");
+        FFAudioStream selected = media.resolve(stream, media.audioStreams);
         AudioStream pre = audioStream;
-        audioStream = (FFAudioStream) stream;
+        select(audioStream, selected);
+        audioStream = selected;
         audioCodec = audioStream.codec;
         return pre;
     }
 
     @Override
     public SubtitleStream setSubtitleStream(SubtitleStream stream) {
-        if (stream.container() != media)
-            throw new IllegalArgumentException("stream not from same container");
+        FFSubtitleStream selected = media.resolve(stream, media.subtitleStreams);
         if (pSubtitle == null)
             pSubtitle = new AVSubtitle();
         SubtitleStream pre = subtitleStream;
-        subtitleStream = (FFSubtitleStream) stream;
+        select(subtitleStream, selected);
+        subtitleStream = selected;
         subtitleCodec = subtitleStream.codec;
         return pre;
     }
 
+    /**
+     * Switches decoding from one stream to another.
+     * <p/>
+     * Decoders are only opened for selected streams, and the demuxer is told to drop packets of every other stream.
+     *
+     * @param previous The stream previously selected, or null if none.
+     * @param next     The stream to select.
+     * @throws StreamException Thrown if the decoder of the selected stream failed to open.
+     */
+    private void select(FFStream previous, FFStream next) {
+        openDecoder(next);
+        // Some demuxers can skip non-keyframes by themselves, saving us from even reading them
+        next.discard(keyframesOnly && next instanceof FFVideoStream ? AVDISCARD_NONKEY : AVDISCARD_DEFAULT);
+        if (previous != null && previous != next) {
+            previous.close();
+            previous.discard(AVDISCARD_ALL);
+        }
+    }
+
+    /**
+     * (Re)opens the decoder of a stream with the decoding configuration of this MediaStream.
+     *
+     * @param stream The stream whose decoder to open.
+     * @throws StreamException Thrown if the decoder failed to open.
+     */
+    // The lowres field is deprecated in favour of an AVOption, but still honoured by avcodec_open2 in this version
+    @SuppressWarnings("deprecation")
+    private void openDecoder(FFStream stream) {
+        AVCodecContext codec = stream.ffstream.codec;
+        codec.skip_frame = keyframesOnly ? AVDISCARD_NONKEY : AVDISCARD_DEFAULT;
+        codec.writeField("skip_frame");
+        codec.skip_loop_filter = fastDecode ? AVDISCARD_ALL : AVDISCARD_DEFAULT;
+        codec.writeField("skip_loop_filter");
+        // Skipping the IDCT of frames others are predicted from would smear its artifacts over the following frames
+        codec.skip_idct = fastDecode ? AVDISCARD_NONREF : AVDISCARD_DEFAULT;
+        codec.writeField("skip_idct");
+
+        // Decoders that cannot decode at reduced resolution simply decode at full resolution
+        int lowres = Math.min(this.lowres, stream.codec.max_lowres);
+        int refcounted = readsAhead(stream) ? 1 : 0;
+        if (stream.isOpen() && codec.thread_count == threadCount && codec.thread_type == threadType.id
+                && codec.lowres == lowres && codec.refcounted_frames == refcounted)
+            return;
+        // Threading and resolution are set up by avcodec_open2, so the decoder must be closed for changes to take effect
+        stream.close();
+        codec.thread_count = threadCount;
+        codec.writeField("thread_count");
+        codec.thread_type = threadType.id;
+        codec.writeField("thread_type");
+        codec.lowres = lowres;
+        codec.writeField("lowres");
+        codec.refcounted_frames = refcounted;
+        codec.writeField("refcounted_frames");
+        stream.open();
+    }
+
+    /**
+     * Checks if decoded frames of a stream go through the read-ahead ring.
+     * <p/>
+     * Frames can only be held on to past the next decode call if the decoder hands out references to them. Frames
+     * delivered straight from the decoder are done with by then, and pulled ones are only valid until the next pull.
+     *
+     * @param stream The stream.
+     * @return True if so, false otherwise.
+     */
+    private boolean readsAhead(FFStream stream) {
+        return readAhead > 0 && !pulling && stream instanceof FFVideoStream;
+    }
+
+    @Override
+    public ThreadType activeThreadType(Stream stream) {
+        // Streams of the container stand for those of the session the selection was made on
+        FFStream selected = media.resolve(stream, media.streams());
+        if (selected != videoStream && selected != audioStream && selected != subtitleStream)
+            throw new IllegalArgumentException("stream not selected");
+        int active = selected.ffstream.codec.getActiveThreadType();
+        for (ThreadType type : ThreadType.values())
+            if (type.id == active)
+                return type;
+        return null;
+    }
+
     @Override
     public void run() {
-        started = playing = true;
-        IntByReference frameFinished = new IntByReference();
-        AVPacket packet = new AVPacket();
-        av_init_packet(packet.getPointer());
-        AVCodecContext ac = audioStream != null ? audioStream.ffstream.codec : null;
-        AVCodecContext vc = videoStream != null ? videoStream.ffstream.codec : null;
+        if (!enter())
+            throw new IllegalStateException("stream closed");
+        try {
+            started = playing = true;
+            IntByReference frameFinished = new IntByReference();
+            AVPacket packet = new AVPacket();
+            av_init_packet(packet.getPointer());
+
+            begin();
+            while (awaitPlaying() && decodeNext(packet, frameFinished)) ;
+            while (awaitPlaying() && drainNext(pFrame, frameFinished)) ;
+            finish();
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    public boolean step() {
+        if (!enter())
+            return false;
+        try {
+            if (!stepping) {
+                if (started)
+                    throw new IllegalStateException("stream already started");
+                started = playing = stepping = true;
+                stepPacket = new AVPacket();
+                av_init_packet(stepPacket.getPointer());
+                stepFrameFinished = new IntByReference();
+                begin();
+            }
+            if (stepped)
+                return false;
+
+            State current = state.get();
+            if (current == State.PAUSED)
+                return true;
+            if (current == State.STOPPED || !decodeNext(stepPacket, stepFrameFinished)
+                    && !drainNext(pFrame, stepFrameFinished)) {
+                stepped = true;
+                finish();
+                return false;
+            }
+            return true;
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Marks the calling thread as decoding, waiting for any other thread decoding to be done first.
+     *
+     * @return True if the stream may be decoded, false if it has been closed.
+     */
+    protected boolean enter() {
+        decoding.lock();
+        if (released) {
+            decoding.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks the calling thread as done decoding, freeing the stream if it was closed meanwhile by a handler.
+     */
+    protected void exit() {
+        try {
+            if (closing && decoding.getHoldCount() == 1 && !released)
+                release();
+        } finally {
+            decoding.unlock();
+        }
+    }
+
+    /**
+     * Checks if the calling thread is decoding this stream, or delivering what was decoded.
+     * Closing the stream from such a thread cannot wait for decoding to end.
+     *
+     * @return True if so, false otherwise.
+     */
+    protected boolean onDecodingThread() {
+        return decoding.isHeldByCurrentThread() || Thread.currentThread() == presenter;
+    }
+
+    /**
+     * Carries out any pending seek, then reads a packet and decodes it if it belongs to a selected stream.
+     *
+     * @param packet        Scratch storage for the packet.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     * @return True if a packet was read, false at the end of the media.
+     */
+    private boolean decodeNext(AVPacket packet, IntByReference frameFinished) {
+        applySeek();
+        if (media.readFrame(packet) < 0)
+            return false;
+
+        int index = packet.getStreamIndex();
+        if (audioStream != null && index == audioStream.index()) {
+            decodeAudio(packet, pFrame, frameFinished);
+        } else if (videoStream != null && index == videoStream.index()) {
+            decodeVideo(packet, pFrame, frameFinished);
+        } else if (subtitleStream != null && index == subtitleStream.index()) {
+            decodeSubtitle(packet, pSubtitle, frameFinished);
+        }
+        // Free the packet that av_read_frame allocated
+        av_free_packet(packet.getPointer());
+        return true;
+    }
+
+    /**
+     * Feeds the decoders of the selected streams an empty packet each, once the media has been read to its end,
+     * so they give up the frames they still hold. Frame-threaded decoders hold one frame per extra thread, and
+     * others with a delay hold frames they reordered.
+     *
+     * @param frame         The frame to decode into.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     * @return True if any decoder gave up a frame, false once all are empty.
+     */
+    private boolean drainNext(AVFrame.ByReference frame, IntByReference frameFinished) {
+        boolean drained = videoStream != null && drainFrame(videoStream, frame, frameFinished);
+        if (audioStream != null && drainFrame(audioStream, frame, frameFinished))
+            drained = true;
+        return drained;
+    }
+
+    /**
+     * Feeds the decoder of a stream an empty packet, passing the frame it gives up (if any) on to the handler.
+     * Decoders without any frames left simply give up none, however often asked.
+     *
+     * @param stream        The stream, either the current video or audio stream.
+     * @param frame         The frame to decode into.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     * @return True if the decoder gave up a frame, false if it is empty.
+     */
+    protected boolean drainFrame(FFStream stream, AVFrame.ByReference frame, IntByReference frameFinished) {
+        if (!stream.isOpen())
+            return false;
+        if (stream == videoStream) {
+            decodeVideo(drainPacket, frame, frameFinished);
+        } else {
+            decodeAudioFrame(drainPacket, frame, frameFinished);
+        }
+        return frameFinished.getValue() != 0;
+    }
+
+    @Override
+    public DecodedFrame nextFrame() {
+        if (!enter())
+            return null;
+        try {
+            if (!pulling) {
+                if (started)
+                    throw new IllegalStateException("stream already started");
+                startPulling();
+            }
+
+            if (applySeek()) {
+                // Everything decoded so far is from before the seek
+                pulled.clear();
+                if (pullAudioRemaining > 0) {
+                    av_free_packet(pullPacket.getPointer());
+                    pullAudioRemaining = 0;
+                }
+            }
 
+            while (pulled.isEmpty()) {
+                if (state.get() == State.STOPPED)
+                    return null;
+                if (pullAudioRemaining > 0) {
+                    // Audio packets may hold several frames; hand them out one at a time
+                    pullAudioRemaining -= decodeAudioFrame(pullPacket, pFrame, pullFrameFinished);
+                    if (pullAudioRemaining <= 0)
+                        av_free_packet(pullPacket.getPointer());
+                    continue;
+                }
+
+                if (media.readFrame(pullPacket) < 0) {
+                    if (drainNext(pFrame, pullFrameFinished))
+                        continue;
+                    playing = false;
+                    return null;
+                }
+
+                int index = pullPacket.getStreamIndex();
+                if (audioStream != null && index == audioStream.index()) {
+                    pullAudioRemaining = pullPacket.getSize();
+                    continue;
+                } else if (videoStream != null && index == videoStream.index()) {
+                    decodeVideo(pullPacket, pFrame, pullFrameFinished);
+                } else if (subtitleStream != null && index == subtitleStream.index()) {
+                    decodeSubtitle(pullPacket, pSubtitle, pullFrameFinished);
+                }
+                av_free_packet(pullPacket.getPointer());
+            }
+            return pulled.poll();
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Switches this stream over to pull mode: decoded media is queued up for {@link #nextFrame()}
+     * instead of being passed to the handlers the stream was built with.
+     */
+    private void startPulling() {
+        started = playing = pulling = true;
+        pullPacket = new AVPacket();
+        av_init_packet(pullPacket.getPointer());
+        pullFrameFinished = new IntByReference();
+        // Decoders opened for reading ahead hand out references, which would be dropped before the pull returns
+        for (FFStream stream : new FFStream[]{videoStream, audioStream, subtitleStream}) {
+            if (stream != null)
+                openDecoder(stream);
+        }
+        if (reuseFrames) {
+            pulledAudio = new DecodedFrame(null, null, 0);
+            pulledVideo = new DecodedFrame(null, null, 0);
+        }
+
+        audioHandler = new AudioHandler() {
+            @Override
+            public void handle(Frame buffer) {
+                pulled.add(reuseFrames ? pulledAudio.reset(audioStream, buffer, 0)
+                        : new DecodedFrame(audioStream, buffer, 0));
+            }
+        };
+        videoHandler = new FrameHandler() {
+            @Override
+            public void handle(Frame buffer, long duration) {
+                pulled.add(reuseFrames ? pulledVideo.reset(videoStream, buffer, duration)
+                        : new DecodedFrame(videoStream, buffer, duration));
+            }
+        };
+        subtitleHandler = new SubtitleHandler() {
+            @Override
+            public void handle(Subtitle subtitle, long start, long end) {
+                pulled.add(new DecodedFrame(subtitleStream, subtitle, start, end));
+            }
+        };
+        begin();
+    }
+
+    /**
+     * Prepares the selected streams for decoding and notifies all handlers of the stream start.
+     */
+    protected void begin() {
+        clock.reset(0);
+        clock.setRunning(true);
         if (videoStream != null) {
-            vc.read();
+            videoStream.ffstream.codec.read();
         }
         if (audioStream != null) {
-            ac.read();
+            audioStream.ffstream.codec.read();
         }
         audioHandler.start();
         videoHandler.start();
         subtitleHandler.start();
-        while (av_read_frame(media.formatContext.getPointer(), packet.getPointer()) >= 0) {
-            try {
-                mutex.acquire(); // This mutex is for pausing
-            } catch (InterruptedException e) {
-                throw new IllegalStateException("could not acquire frame mutex");
+        // Frames pulled through nextFrame() are presented by whoever pulls them
+        if (videoStream != null && readsAhead(videoStream)) {
+            ring = new FrameRing(readAhead);
+            presenter = new Presenter();
+            presenter.start();
+        }
+    }
+
+    /**
+     * Notifies all handlers of the stream end.
+     */
+    protected void finish() {
+        endPresenting();
+        videoHandler.end();
+        audioHandler.end();
+        subtitleHandler.end();
+        playing = false;
+        clock.setRunning(false);
+        stop();
+        if (presenterFailure != null)
+            throw presenterFailure;
+    }
+
+    /**
+     * Waits for the presenter to deliver whatever was read ahead, unless stopped, and shuts it down.
+     */
+    private void endPresenting() {
+        if (presenter == null)
+            return;
+        ring.finish();
+        try {
+            presenter.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("interrupted while waiting for presenter");
+        }
+        ring.close();
+        presenter = null;
+    }
+
+    /**
+     * Blocks for as long as the stream is paused.
+     * <p/>
+     * Costs a single volatile read unless paused.
+     *
+     * @return True if decoding may carry on, false if the stream was stopped.
+     */
+    protected boolean awaitPlaying() {
+        State current;
+        while ((current = state.get()) == State.PAUSED) {
+            Thread thread = Thread.currentThread();
+            parked.add(thread);
+            // Checked again once registered, so a wake-up in between cannot be missed
+            if (state.get() == State.PAUSED)
+                LockSupport.park(this);
+            parked.remove(thread);
+        }
+        return current != State.STOPPED;
+    }
+
+    /**
+     * Brings the state in line with {@link #playing}, unless seeking or stopped.
+     */
+    private void settle() {
+        while (true) {
+            State current = state.get();
+            if (current == State.SEEKING || current == State.STOPPED)
+                return;
+            State wanted = playing ? State.PLAYING : State.PAUSED;
+            if (current == wanted)
+                return;
+            if (state.compareAndSet(current, wanted)) {
+                if (wanted == State.PLAYING)
+                    wake();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Switches to seeking, so that the decoding threads carry out the pending seek even if paused.
+     */
+    private void beginSeeking() {
+        while (true) {
+            State current = state.get();
+            if (current == State.SEEKING || current == State.STOPPED)
+                return;
+            if (state.compareAndSet(current, State.SEEKING)) {
+                wake();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Switches back from seeking to playing or paused, whichever was last asked for.
+     */
+    private void endSeeking() {
+        if (state.get() == State.SEEKING && state.compareAndSet(State.SEEKING, playing ? State.PLAYING : State.PAUSED)) {
+            // setPlaying() leaves the state alone while seeking, so catch up with any call made meanwhile
+            settle();
+            // A seek requested after the last one was taken would otherwise wait for the stream to be resumed
+            if (pendingSeek.get() != NO_SEEK)
+                beginSeeking();
+        }
+    }
+
+    /**
+     * Stops decoding for good, waking any paused decoding threads so they can wind down.
+     */
+    protected void stop() {
+        state.set(State.STOPPED);
+        wake();
+    }
+
+    private void wake() {
+        for (Thread thread : parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Decodes an audio packet, passing every frame contained in it on to the audio handler.
+     *
+     * @param packet        The packet to decode. Must belong to the current audio stream.
+     * @param frame         The frame to decode into.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     */
+    protected void decodeAudio(AVPacket packet, AVFrame.ByReference frame, IntByReference frameFinished) {
+        // Decode the media into our frame
+        int read = 0;
+
+        // According to FFmpeg docs:
+        // Some decoders may support multiple frames in a single AVPacket.
+        // Such decoders would then just decode the first handle and the return value
+        // would be less than the packet size. In this case, avcodec_decode_audio4 has
+        // to be called again with an AVPacket containing the remaining data in order to
+        // decode the second handle, etc... Even if no frames are returned, the packet needs
+        // to be fed to the decoder with remaining data until it is completely consumed or
+        // an error occurs.
+        // Implemented the first two sentences. Not sure about the last.
+        int size = packet.getSize();
+        while (read < size) {
+            read += decodeAudioFrame(packet, frame, frameFinished);
+        }
+    }
+
+    /**
+     * Decodes a single frame from an audio packet, passing it on to the audio handler.
+     *
+     * @param packet        The packet to decode. Must belong to the current audio stream.
+     * @param frame         The frame to decode into.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     * @return The number of bytes of the packet consumed.
+     */
+    protected int decodeAudioFrame(AVPacket packet, AVFrame.ByReference frame, IntByReference frameFinished) {
+        int err = avcodec_decode_audio4(audioStream.ffstream.codec.getPointer(), frame.getPointer(), frameFinished, packet.getPointer());
+        if (err < 0) {
+            throw new StreamException("error while decoding audio stream: " + err, err);
+        }
+
+        long time = frameFinished.getValue() != 0 ? presentationTime(audioStream, frame) : -1;
+        if (frameFinished.getValue() != 0 && !beforeSeekTarget(time)) {
+            if (time >= 0)
+                clock.update(Stream.Type.STREAM_AUDIO, time);
+            int linesize = frame.getLinesize(0);
+            int samples = frame.getNbSamples();
+            int planes = isPlanar(audioStream.audioFormat().encoding()) ? frame.getChannels() : 1;
+            Frame output = reuseFrames ? audioFrame.reset(planes, samples) : new Frame(planes, samples);
+
+            for (int p = 0; p != planes; p++) {
+                output.plane(p).set(view(audioViews, frame.getExtendedData(p), linesize), linesize);
+            }
+            delivered();
+            audioHandler.handle(output);
+        }
+        av_frame_unref(frame.getPointer());
+        return err;
+    }
+
+    /**
+     * Decodes a video packet, passing the resulting frame (if any) on to the video handler.
+     *
+     * @param packet        The packet to decode. Must belong to the current video stream.
+     * @param frame         The frame to decode into.
+     * @param frameFinished Scratch storage for the decoder's completion flag.
+     */
+    protected void decodeVideo(AVPacket packet, AVFrame.ByReference frame, IntByReference frameFinished) {
+        // The decoder would throw away everything but keyframes anyway, but only after parsing them.
+        // Empty packets carry no data to parse, and only drain the decoder
+        if (keyframesOnly && packet.getSize() != 0 && (packet.getFlags() & AVPacket.AV_PKT_FLAG_KEY) == 0)
+            return;
+        // Decode the media into our frame
+        int err = avcodec_decode_video2(videoStream.ffstream.codec.getPointer(), frame.getPointer(), frameFinished, packet.getPointer());
+        // If the return of avcodec_decode_video2 is negative, an error occurred.
+        // Fun fact: the error is actually the negative of an ASCII string in little-endian order.
+        if (err < 0) {
+            throw new StreamException("error while decoding video stream: " + err, err);
+        }
+        if (frameFinished.getValue() != 0) {
+            long time = presentationTime(videoStream, frame);
+            if (beforeSeekTarget(time)) {
+                av_frame_unref(frame.getPointer());
+                return;
             }
+            long duration = frame.getPktDuration() * 1000000000 *
+                    videoStream.ffstream.time_base.num / videoStream.ffstream.time_base.den;
+
+            if (duration == 0) // Some videos have duration of zero. Assume average frame length
+                duration = (long) ((1000 / videoStream.framerate()) * 1000000);
+
+            if (time < 0) // No timestamp to go by, so carry on from the previous frame
+                time = Math.max(videoTime, 0) + duration / 1000000;
+            videoTime = time;
+
+            if (ring != null) {
+                readAhead(frame, time, duration);
+                return;
+            }
+            clock.update(Stream.Type.STREAM_VIDEO, time);
+
+            int i = 0;
+            for (; i < AVFrame.AV_NUM_DATA_POINTERS && frame.getLinesize(i) != 0; i++) ;
+            Frame output = reuseFrames ? videoFrame.reset(i, 1) : new Frame(i, 1);
+            int height = frame.getHeight();
+            for (int p = 0; p != i; p++) {
+                int l = frame.getLinesize(p);
+                output.plane(p).set(view(videoViews, frame.getData(p), l * height), l);
+            }
+            delivered();
+            videoHandler.handle(output, duration);
+            av_frame_unref(frame.getPointer());
+        }
+    }
+
+    /**
+     * Moves a decoded video frame into the read-ahead ring, for the presenter thread to deliver.
+     * Blocks for as long as the ring is full.
+     *
+     * @param frame    The decoded frame. Its reference is taken over by the ring.
+     * @param time     The presentation time of the frame, in milliseconds.
+     * @param duration The duration of the frame, in nanoseconds.
+     */
+    private void readAhead(AVFrame frame, long time, long duration) {
+        FFFrame slot;
+        while ((slot = ring.acquire(READ_AHEAD_TIMEOUT)) == null) {
+            if (state.get() == State.STOPPED) {
+                av_frame_unref(frame.getPointer());
+                return;
+            }
+        }
+        // Hands the decoder's reference over without copying; the decoder gets a fresh frame for its next output
+        av_frame_move_ref(slot.frame.getPointer(), frame.getPointer());
+        slot.time = time;
+        slot.duration = duration;
+        ring.publish(slot.load());
+    }
+
+    /**
+     * Delivers frames from the read-ahead ring to the video handler, until the end of the stream.
+     */
+    private class Presenter extends Thread {
+        private Presenter() {
+            super("JAVI video presenter");
+            setDaemon(true);
+        }
 
-            packet.read();
-
-            if (audioStream != null && packet.stream_index == audioStream.index()) {
-                // Decode the media into our pFrame
-                int read = 0;
-
-                // According to FFmpeg docs:
-                // Some decoders may support multiple frames in a single AVPacket.
-                // Such decoders would then just decode the first handle and the return value
-                // would be less than the packet size. In this case, avcodec_decode_audio4 has
-                // to be called again with an AVPacket containing the remaining data in order to
-                // decode the second handle, etc... Even if no frames are returned, the packet needs
-                // to be fed to the decoder with remaining data until it is completely consumed or
-                // an error occurs.
-                // Implemented the first two sentences. Not sure about the last.
-                while (read < packet.size) {
-                    int err = avcodec_decode_audio4(ac.getPointer(), pFrame.getPointer(), frameFinished, packet.getPointer());
-
-                    if (err < 0) {
-                        throw new StreamException("error while decoding audio stream: " + err, err);
-                    } else {
-                        read += err;
+        @Override
+        public void run() {
+            FFFrame frame;
+            while ((frame = ring.next()) != null) {
+                try {
+                    // Frames still in the ring while seeking precede the seek; once stopped, nobody wants them
+                    if (presenterFailure == null && awaitPlaying() && state.get() != FFMediaStream.State.SEEKING) {
+                        clock.update(Stream.Type.STREAM_VIDEO, frame.time);
+                        delivered();
+                        videoHandler.handle(frame, frame.duration);
                     }
+                } catch (RuntimeException e) {
+                    // Keep draining, so the decoder never blocks on us
+                    presenterFailure = e;
+                    FFMediaStream.this.stop();
+                } finally {
+                    // The frame is ours, whatever the handler did with it; release() on it does nothing
+                    frame.recycle();
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches the presentation time of a decoded frame.
+     *
+     * @param stream The stream the frame was decoded from.
+     * @param frame  The frame.
+     * @return The time, in milliseconds from the start of the stream, or -1 if the frame carries no timestamp.
+     */
+    protected long presentationTime(FFStream stream, AVFrame frame) {
+        // The decoder's best guess accounts for reordering and broken timestamps; the packet's is the fallback
+        long timestamp = frame.getBestEffortTimestamp();
+        if (timestamp == AV_NOPTS_VALUE)
+            timestamp = frame.getPktPts();
+        return timestamp != AV_NOPTS_VALUE ? Math.max(stream.millis(timestamp), 0) : -1;
+    }
+
+    /**
+     * Checks if a decoded frame precedes the position last seeked to, and must be dropped.
+     *
+     * @param time The presentation time of the frame, or -1 if unknown.
+     * @return True if so, false otherwise, or if the time is unknown.
+     */
+    protected boolean beforeSeekTarget(long time) {
+        return time >= 0 && time < seekTarget;
+    }
+
+    /**
+     * Creates a buffer spanning a region of native memory.
+     *
+     * @param cache   The cache to take the buffer from, or null to create a new one.
+     * @param address The address of the region.
+     * @param size    The size of the region, in bytes.
+     * @return The buffer.
+     */
+    private static ByteBuffer view(ViewCache cache, long address, int size) {
+        return cache != null ? cache.view(address, size) : Native.getDirectByteBuffer(address, size);
+    }
 
-                    pFrame.read();
-                    if (frameFinished.getValue() != 0) {
-                        int linesize = pFrame.linesize[0];
-                        Plane[] planes = new Plane[isPlanar(audioStream.audioFormat().encoding()) ? pFrame.channels : 1];
+    /**
+     * Decodes a subtitle packet, passing every subtitle contained in it on to the subtitle handler.
+     *
+     * @param packet      The packet to decode. Must belong to the current subtitle stream.
+     * @param subtitle    The subtitle to decode into.
+     * @param gotSubtitle Scratch storage for the decoder's completion flag.
+     */
+    protected void decodeSubtitle(AVPacket packet, AVSubtitle subtitle, IntByReference gotSubtitle) {
+        int err = avcodec_decode_subtitle2(subtitleStream.ffstream.codec.getPointer(), subtitle.getPointer(), gotSubtitle, packet.getPointer());
+        if (err < 0) {
+            throw new StreamException("error while decoding video stream: " + err, err);
+        }
+        if (gotSubtitle.getValue() != 0) {
+            subtitle.read();
 
-                        for (int p = 0; p != planes.length; p++) {
-                            planes[p] = new Plane(Native.getDirectByteBuffer(
-                                    Pointer.nativeValue(pFrame.extended_data.getPointer(p * Pointer.SIZE)),
-                                    linesize), linesize);
+            long start = subtitle.start_display_time * 1000 * subtitleStream.ffstream.time_base.num / subtitleStream.ffstream.time_base.den;
+            long end = subtitle.end_display_time * 1000 * subtitleStream.ffstream.time_base.num / subtitleStream.ffstream.time_base.den;
+            for (Pointer pointer : subtitle.rects.getPointerArray(0, subtitle.num_rects)) {
+                AVSubtitleRect rect = new AVSubtitleRect(pointer);
+                switch (SubtitleType.values()[rect.type]) {
+                    case SUBTITLE_NONE:
+                        break;
+                    case SUBTITLE_BITMAP: {
+                        byte[] r = new byte[rect.nb_colors], g = new byte[rect.nb_colors],
+                                b = new byte[rect.nb_colors], a = new byte[rect.nb_colors];
+                        for (int i = 0; i < rect.nb_colors; ++i) {
+                            int colour = rect.pict.data[1].getInt(i * 4);
+                            r[i] = (byte) (colour >> 16);
+                            g[i] = (byte) (colour >> 8);
+                            b[i] = (byte) (colour);
+                            a[i] = (byte) (colour >> 24);
                         }
-                        audioHandler.handle(new Frame(planes, pFrame.nb_samples));
+                        IndexColorModel palette = new IndexColorModel(8, rect.nb_colors, r, g, b, a);
+                        BufferedImage result = new BufferedImage(rect.w, rect.h, BufferedImage.TYPE_BYTE_INDEXED, palette);
+                        byte[] raster = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+                        rect.pict.data[0].read(0, raster, 0, raster.length);
+
+                        subtitleHandler.handle(new BitmapSubtitle(rect.x, rect.y, result), start, end);
+                        break;
                     }
-                    av_frame_unref(pFrame);
-                }
-            } else if (videoStream != null && packet.stream_index == videoStream.index()) {
-                // Decode the media into our pFrame
-                int err = avcodec_decode_video2(videoStream.ffstream.codec.getPointer(), pFrame.getPointer(), frameFinished, packet.getPointer());
-                // If the return of avcodec_decode_video2 is negative, an error occurred.
-                // Fun fact: the error is actually the negative of an ASCII string in little-endian order.
-                if (err < 0) {
-                    throw new StreamException("error while decoding video stream: " + err, err);
-                }
-                if (frameFinished.getValue() != 0) {
-                    pFrame.read();
-                    long duration = pFrame.pkt_duration * 1000000000 *
-                            videoStream.ffstream.time_base.num / videoStream.ffstream.time_base.den;
-
-                    if (duration == 0) // Some videos have duration of zero. Assume average frame length
-                        duration = (long) ((1000 / videoStream.framerate()) * 1000000);
-
-                    time += duration / 1000000;
-
-                    int i = 0;
-                    for (; i < pFrame.linesize.length && pFrame.linesize[i] != 0; i++) ;
-                    Plane[] planes = new Plane[i];
-                    for (int p = 0; p != i; p++) {
-                        int l = pFrame.linesize[p];
-                        planes[p] = new Plane(Native.getDirectByteBuffer(Pointer.nativeValue(pFrame.data[p]), l * pFrame.height), l);
+                    case SUBTITLE_TEXT: {
+                        String text = rect.text.getString(0, "UTF-8");
+                        subtitleHandler.handle(new TextSubtitle(text), start, end);
+                        break;
                     }
-                    videoHandler.handle(new Frame(planes), duration);
-                    av_frame_unref(pFrame);
-                }
-            } else if (subtitleStream != null && packet.stream_index == subtitleStream.index()) {
-                int err = avcodec_decode_subtitle2(subtitleStream.ffstream.codec.getPointer(), pSubtitle.getPointer(), frameFinished, packet.getPointer());
-                if (err < 0) {
-                    throw new StreamException("error while decoding video stream: " + err, err);
-                }
-                if (frameFinished.getValue() != 0) {
-                    pSubtitle.read();
-
-                    long start = pSubtitle.start_display_time * 1000 * subtitleStream.ffstream.time_base.num / subtitleStream.ffstream.time_base.den;
-                    long end = pSubtitle.end_display_time * 1000 * subtitleStream.ffstream.time_base.num / subtitleStream.ffstream.time_base.den;
-                    for (Pointer pointer : pSubtitle.rects.getPointerArray(0, pSubtitle.num_rects)) {
-                        AVSubtitleRect rect = new AVSubtitleRect(pointer);
-                        switch (SubtitleType.values()[rect.type]) {
-                            case SUBTITLE_NONE:
-                                break;
-                            case SUBTITLE_BITMAP: {
-                                byte[] r = new byte[rect.nb_colors], g = new byte[rect.nb_colors],
-                                        b = new byte[rect.nb_colors], a = new byte[rect.nb_colors];
-                                for (int i = 0; i < rect.nb_colors; ++i) {
-                                    int colour = rect.pict.data[1].getInt(i * 4);
-                                    r[i] = (byte) (colour >> 16);
-                                    g[i] = (byte) (colour >> 8);
-                                    b[i] = (byte) (colour);
-                                    a[i] = (byte) (colour >> 24);
-                                }
-                                IndexColorModel palette = new IndexColorModel(8, rect.nb_colors, r, g, b, a);
-                                BufferedImage result = new BufferedImage(rect.w, rect.h, BufferedImage.TYPE_BYTE_INDEXED, palette);
-                                byte[] raster = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
-                                rect.pict.data[0].read(0, raster, 0, raster.length);
-
-                                subtitleHandler.handle(new BitmapSubtitle(rect.x, rect.y, result), start, end);
-                                break;
-                            }
-                            case SUBTITLE_TEXT: {
-                                String subtitle = rect.text.getString(0, "UTF-8");
-                                subtitleHandler.handle(new TextSubtitle(subtitle), start, end);
-                                break;
-                            }
-                            case SUBTITLE_DONKEY: {
-                                if (donkeyParsers[packet.stream_index] == null) {
-                                    if (subtitleStream.ffstream.codec.subtitle_header_size <= 0)
-                                        throw new IllegalStateException("subtitle without header");
-                                    String header = subtitleStream.ffstream.codec.subtitle_header.getString(0, "UTF-8");
-                                    DonkeyParser parser = new DonkeyParser(header);
-                                    donkeyParsers[packet.stream_index] = parser;
-                                }
-                                String subtitle = rect.ass.getString(0, "UTF-8");
-                                subtitleHandler.handle(donkeyParsers[packet.stream_index].processDialog(subtitle), start, end);
-                                break;
-                            }
+                    case SUBTITLE_DONKEY: {
+                        int index = packet.getStreamIndex();
+                        if (donkeyParsers[index] == null) {
+                            if (subtitleStream.ffstream.codec.subtitle_header_size <= 0)
+                                throw new IllegalStateException("subtitle without header");
+                            String header = subtitleStream.ffstream.codec.subtitle_header.getString(0, "UTF-8");
+                            DonkeyParser parser = new DonkeyParser(header);
+                            donkeyParsers[index] = parser;
                         }
+                        String dialog = rect.ass.getString(0, "UTF-8");
+                        subtitleHandler.handle(donkeyParsers[index].processDialog(dialog), start, end);
+                        break;
                     }
-                    av_frame_unref(pFrame);
                 }
             }
-            // Free the packet that av_read_frame allocated
-            av_free_packet(packet.getPointer());
-            mutex.release();
+            // Free the rects that avcodec_decode_subtitle2 allocated
+            avsubtitle_free(subtitle.getPointer());
         }
-        videoHandler.end();
-        audioHandler.end();
-        subtitleHandler.end();
-        setPlaying(false);
     }
 
     @Override
@@ -285,15 +939,8 @@ public class FFMediaStream implements MediaStream {
         if (!started)
             throw new IllegalStateException("stream not started");
         playing = flag;
-        if (!playing) {
-            try {
-                mutex.acquire();
-            } catch (InterruptedException e) {
-                throw new IllegalStateException("failed to acquire frame mutex");
-            }
-        } else {
-            mutex.release();
-        }
+        clock.setRunning(flag);
+        settle();
     }
 
     @Override
@@ -304,20 +951,155 @@ public class FFMediaStream implements MediaStream {
             throw new IllegalArgumentException("negative position");
         if (to > media.length())
             throw new IllegalArgumentException("position greater then video length");
-        int err = av_seek_frame(media.formatContext.getPointer(), -1, to * 1000, 0);
-        if (err < 0)
-            throw new StreamException("failed to seek video: error " + err, err);
-        time = to;
+        // The decode thread picks the request up between packets, so the demuxer and decoders are never
+        // touched from two threads at once. Later requests overwrite earlier ones that were not yet acted upon
+        seekRequested = System.nanoTime();
+        pendingSeek.set(to);
+        beginSeeking();
+    }
+
+    /**
+     * Carries out the seek last requested, if any.
+     * <p/>
+     * Must be called from the thread driving the demuxer, between packets.
+     *
+     * @return True if a seek was carried out, false otherwise.
+     */
+    protected boolean applySeek() {
+        long to = pendingSeek.getAndSet(NO_SEEK);
+        if (to == NO_SEEK) {
+            endSeeking();
+            return false;
+        }
+        long requested = seekRequested;
+        try {
+            flushDecoders();
+            if (ring != null)
+                ring.clear();
+            if (!seekDemuxer(to)) {
+                // Playback simply carries on from where it was
+                seekLatency = -1;
+                return false;
+            }
+            // Decode forward from the keyframe, but only deliver from the target on
+            seekTarget = to;
+            videoTime = -1;
+            clock.reset(to);
+            seekIssued = requested;
+            return true;
+        } finally {
+            endSeeking();
+        }
+    }
+
+    /**
+     * Discards everything buffered in the decoders of the selected streams, so that no frame from before a seek
+     * is delivered after it.
+     */
+    protected void flushDecoders() {
+        for (FFStream stream : new FFStream[]{videoStream, audioStream, subtitleStream}) {
+            if (stream != null && stream.isOpen())
+                avcodec_flush_buffers(stream.ffstream.codec.getPointer());
+        }
+    }
+
+    /**
+     * Moves the demuxer to the keyframe preceding a position.
+     *
+     * @param to The position, in milliseconds.
+     * @return True if the demuxer was moved, false if it could not seek.
+     */
+    private boolean seekDemuxer(long to) {
+        Pointer formatContext = media.formatContext.getPointer();
+        FFStream reference = videoStream != null ? videoStream : audioStream;
+        KeyframeIndex index = media.keyframeIndex();
+        int err = -1;
+        if (index != null && reference != null) {
+            int stream = reference.index();
+            int keyframe = index.keyframeBefore(stream, reference.timestamp(to));
+            if (keyframe >= 0) {
+                err = av_seek_frame(formatContext, stream, index.timestamp(stream, keyframe), AVSEEK_FLAG_BACKWARD);
+                // Some demuxers cannot seek by timestamp, but can still jump straight to the keyframe's bytes
+                if (err < 0 && index.position(stream, keyframe) >= 0)
+                    err = av_seek_frame(formatContext, stream, index.position(stream, keyframe), AVSEEK_FLAG_BYTE);
+            }
+        }
+        if (err < 0) {
+            // Land before the target, wherever the demuxer thinks the preceding keyframe is. Positions count from
+            // the start of the media, but container timestamps from wherever the container says it starts
+            long start = media.formatContext.start_time;
+            err = av_seek_frame(formatContext, -1, to * 1000 + (start != AV_NOPTS_VALUE ? start : 0),
+                    AVSEEK_FLAG_BACKWARD);
+        }
+        return err >= 0;
+    }
+
+    /**
+     * Records the latency of the seek in progress, if any. Called whenever a frame is delivered.
+     */
+    private void delivered() {
+        long issued = seekIssued;
+        if (issued != 0) {
+            seekIssued = 0;
+            seekLatency = System.nanoTime() - issued;
+        }
+    }
+
+    @Override
+    public MediaClock clock() {
+        return clock;
+    }
+
+    @Override
+    public long seekLatency() {
+        return seekLatency;
     }
 
     @Override
     public long position() {
-        return time;
+        return clock.time();
+    }
+
+    @Override
+    public void cancel() {
+        stop();
+        media.interrupter.cancel();
     }
 
     @Override
     public void close() {
+        stop();
+        // Unblocks a decoding thread stuck reading; a shared demuxer is left alone, as other streams may be using it
+        if (media.reopenable())
+            media.interrupter.cancel();
+        closing = true;
+        // A handler closing the stream would wait on itself; the decoding thread frees everything once it unwinds
+        if (onDecodingThread())
+            return;
+        // Waits out whoever is decoding, whose exit() then finds the stream closing
+        if (enter())
+            exit();
+    }
+
+    /**
+     * Frees everything the stream holds. Only called once nothing is decoding any more.
+     */
+    private void release() {
+        released = true;
+        // Streams closed part-way through stepping still have their presenter running
+        endPresenting();
+        if (pullAudioRemaining > 0) {
+            av_free_packet(pullPacket.getPointer());
+            pullAudioRemaining = 0;
+        }
+        for (FFStream stream : new FFStream[]{videoStream, audioStream, subtitleStream}) {
+            if (stream != null) {
+                stream.close();
+                stream.discard(AVDISCARD_ALL);
+            }
+        }
         avcodec_free_frame(new PointerByReference(pFrame.getPointer()));
+        container.release(media);
     }
 
     @Override
@@ -335,11 +1117,27 @@ public class FFMediaStream implements MediaStream {
         return subtitleStream;
     }
 
+    /**
+     * States of the decoding loop.
+     */
+    protected static enum State {
+        PLAYING, PAUSED, SEEKING, STOPPED
+    }
+
     public static class Builder implements MediaStream.Builder {
         public FFMedia media;
         public AudioHandler audioHandler = AudioHandler.NO_HANDLER;
         public FrameHandler videoHandler = FrameHandler.NO_HANDLER;
         public SubtitleHandler subtitleHandler = SubtitleHandler.NO_HANDLER;
+        public boolean pipelined;
+        public int videoQueueDepth, audioQueueDepth, subtitleQueueDepth;
+        public int threadCount = 1;
+        public ThreadType threadType = ThreadType.ANY;
+        public boolean reuseFrames;
+        public boolean keyframesOnly;
+        public boolean fastDecode;
+        public int lowres;
+        public int readAhead;
 
         /**
          * Creates a MediaStream builder for the specified {@link Media} object.
@@ -369,11 +1167,74 @@ public class FFMediaStream implements MediaStream {
             return this;
         }
 
+        @Override
+        public Builder pipelined(int videoQueueDepth, int audioQueueDepth, int subtitleQueueDepth) {
+            if (videoQueueDepth < 1 || audioQueueDepth < 1 || subtitleQueueDepth < 1)
+                throw new IllegalArgumentException("queue depths must be positive");
+            this.pipelined = true;
+            this.videoQueueDepth = videoQueueDepth;
+            this.audioQueueDepth = audioQueueDepth;
+            this.subtitleQueueDepth = subtitleQueueDepth;
+            return this;
+        }
+
+        @Override
+        public Builder threads(int threadCount) {
+            if (threadCount < 0)
+                throw new IllegalArgumentException("negative thread count");
+            this.threadCount = threadCount;
+            return this;
+        }
+
+        @Override
+        public Builder threadType(ThreadType threadType) {
+            if (threadType == null)
+                throw new IllegalArgumentException("null thread type");
+            this.threadType = threadType;
+            return this;
+        }
+
+        @Override
+        public Builder reuseFrames(boolean reuseFrames) {
+            this.reuseFrames = reuseFrames;
+            return this;
+        }
+
+        @Override
+        public Builder keyframesOnly(boolean keyframesOnly) {
+            this.keyframesOnly = keyframesOnly;
+            return this;
+        }
+
+        @Override
+        public Builder fastDecode(boolean fastDecode) {
+            this.fastDecode = fastDecode;
+            return this;
+        }
+
+        @Override
+        public Builder lowres(int lowres) {
+            if (lowres < 0 || lowres > 3)
+                throw new IllegalArgumentException("lowres must be between 0 and 3");
+            this.lowres = lowres;
+            return this;
+        }
+
+        @Override
+        public Builder readAhead(int frames) {
+            if (frames < 0)
+                throw new IllegalArgumentException("negative read-ahead");
+            this.readAhead = frames;
+            return this;
+        }
+
         @Override
         public FFMediaStream create() throws IOException {
             if (audioHandler == null && videoHandler == null && subtitleHandler == null)
                 throw new IllegalStateException("no media handlers specified");
-            return new FFMediaStream(media, audioHandler, videoHandler, subtitleHandler);
+            if (pipelined)
+                return new FFPipelinedMediaStream(this);
+            return new FFMediaStream(this);
         }
     }
 }
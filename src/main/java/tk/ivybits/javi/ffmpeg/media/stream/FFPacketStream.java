@@ -0,0 +1,223 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import tk.ivybits.javi.ffmpeg.avcodec.AVPacket;
+import tk.ivybits.javi.ffmpeg.avformat.AVStream;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.handler.PacketHandler;
+import tk.ivybits.javi.media.stream.Packet;
+import tk.ivybits.javi.media.stream.PacketStream;
+import tk.ivybits.javi.media.stream.Stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.av_free_packet;
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.av_init_packet;
+import static tk.ivybits.javi.ffmpeg.avcodec.AVDiscard.AVDISCARD_DEFAULT;
+
+/**
+ * FFmpeg PacketStream implementation. No decoders are opened.
+ * </p>
+ * Cannot be instantiated directly.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class FFPacketStream implements PacketStream {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocateDirect(0);
+    public final FFMedia media;
+    // Container the stream was created for; media is either that or a session of it
+    private final FFMedia container;
+    public final PacketHandler handler;
+    // Streams of the container, which of them are demuxed, and what their discard flags were before
+    private final AVStream[] streams;
+    private final boolean[] selected;
+    private final int[] discards;
+    private final double[] timeBases;
+    private volatile boolean closed;
+    // Whether run() is demuxing, and whether the container was handed back (both guarded by this)
+    private boolean running, released;
+
+    FFPacketStream(Builder builder) throws IOException {
+        // A demuxer of our own, so that MediaStreams of the same media neither steal our packets nor we theirs
+        this.container = builder.media;
+        this.media = container.session();
+        this.handler = builder.handler;
+        int count = media.formatContext.nb_streams;
+        streams = new AVStream[count];
+        selected = new boolean[count];
+        discards = new int[count];
+        timeBases = new double[count];
+        for (int i = 0; i != count; i++) {
+            streams[i] = new AVStream(media.formatContext.streams.getPointer(i * Pointer.SIZE));
+            timeBases[i] = streams[i].time_base.num / (double) streams[i].time_base.den;
+            selected[i] = builder.streams == null;
+        }
+        if (builder.streams != null) {
+            for (Stream stream : builder.streams)
+                selected[stream.index()] = true;
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (released)
+                throw new IllegalStateException("stream closed");
+            if (running)
+                throw new IllegalStateException("stream already running");
+            running = true;
+        }
+        try {
+            demux();
+        } finally {
+            synchronized (this) {
+                running = false;
+                if (closed)
+                    release();
+            }
+        }
+    }
+
+    /**
+     * Demuxes the container on the calling thread until its end, or until closed.
+     */
+    private void demux() {
+        for (int i = 0; i != streams.length; i++) {
+            if (selected[i]) {
+                streams[i].readField("discard");
+                discards[i] = streams[i].discard;
+                discard(i, AVDISCARD_DEFAULT);
+            }
+        }
+
+        AVPacket packet = new AVPacket();
+        av_init_packet(packet.getPointer());
+        handler.start();
+        try {
+            while (!closed && media.readFrame(packet) >= 0) {
+                try {
+                    int index = packet.getStreamIndex();
+                    // Streams may appear mid-file in some formats; those were never exposed, so neither are their packets
+                    if (index < streams.length && selected[index]) {
+                        int size = packet.getSize();
+                        int flags = packet.getFlags();
+                        handler.handle(new Packet(index,
+                                size != 0 ? Native.getDirectByteBuffer(packet.getData(), size) : EMPTY,
+                                packet.getPts(), packet.getDts(), packet.getDuration(), packet.getPos(),
+                                (flags & AVPacket.AV_PKT_FLAG_KEY) != 0, (flags & AVPacket.AV_PKT_FLAG_CORRUPT) != 0,
+                                timeBases[index]));
+                    }
+                } finally {
+                    av_free_packet(packet.getPointer());
+                }
+            }
+        } finally {
+            for (int i = 0; i != streams.length; i++) {
+                if (selected[i])
+                    discard(i, discards[i]);
+            }
+            handler.end();
+        }
+    }
+
+    /**
+     * Sets which packets of a stream the demuxer may drop, unless a MediaStream is decoding the stream.
+     *
+     * @param index   The index of the stream.
+     * @param discard One of the {@link tk.ivybits.javi.ffmpeg.avcodec.AVDiscard} values.
+     */
+    private void discard(int index, int discard) {
+        for (FFStream stream : media.streams()) {
+            if (stream.index() == index && stream.isOpen())
+                return;
+        }
+        streams[index].discard = discard;
+        streams[index].writeField("discard");
+    }
+
+    /**
+     * Stops demuxing, aborting any read in progress if the media was opened
+     * {@link tk.ivybits.javi.media.OpenOptions.Builder#cancellable(boolean) cancellable}. Returns right away;
+     * if the stream is running, the container is handed back once {@link #run()} unwinds.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // A shared demuxer is left alone, as MediaStreams may be using it
+        if (media.reopenable())
+            media.interrupter.cancel();
+        synchronized (this) {
+            if (!running && !released)
+                release();
+        }
+    }
+
+    /**
+     * Hands the container back. Only called once nothing is demuxing any more.
+     */
+    private void release() {
+        released = true;
+        container.release(media);
+    }
+
+    public static class Builder implements PacketStream.Builder {
+        public FFMedia media;
+        public PacketHandler handler = PacketHandler.NO_HANDLER;
+        public Stream[] streams;
+
+        /**
+         * Creates a PacketStream builder for the specified {@link Media} object.
+         *
+         * @param media The container designated for demuxing.
+         * @since 1.0
+         */
+        public Builder(FFMedia media) {
+            this.media = media;
+        }
+
+        @Override
+        public Builder handler(PacketHandler handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public Builder streams(Stream... streams) {
+            for (Stream stream : streams) {
+                if (!media.owns(stream))
+                    throw new IllegalArgumentException("stream not from same container");
+            }
+            this.streams = streams.length != 0 ? streams.clone() : null;
+            return this;
+        }
+
+        @Override
+        public FFPacketStream create() throws IOException {
+            if (handler == null)
+                throw new IllegalStateException("no packet handler specified");
+            return new FFPacketStream(this);
+        }
+    }
+}
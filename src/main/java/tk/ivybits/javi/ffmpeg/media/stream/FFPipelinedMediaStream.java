@@ -0,0 +1,297 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.avcodec.AVPacket;
+import tk.ivybits.javi.ffmpeg.avcodec.AVSubtitle;
+import tk.ivybits.javi.ffmpeg.avutil.AVFrame;
+import tk.ivybits.javi.media.stream.StreamException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.*;
+
+/**
+ * FFmpeg MediaStream implementation which decodes each selected stream on its own thread.
+ * <p/>
+ * The thread calling {@link #run()} demuxes the container, and hands packets off to bounded per-stream queues.
+ * Each queue is drained by a dedicated decoder thread, so a slow video frame no longer starves audio delivery,
+ * and vice versa.
+ * </p>
+ * Cannot be instantiated directly.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class FFPipelinedMediaStream extends FFMediaStream {
+    // Marks the end of a packet queue; never passed to FFmpeg
+    private static final AVPacket END_OF_STREAM = new AVPacket();
+    // Asks a decoder to flush its codec; never passed to FFmpeg either
+    private static final AVPacket FLUSH = new AVPacket();
+    // How long the demuxer waits on a full queue before checking whether decoding has failed, in milliseconds
+    private static final int OFFER_TIMEOUT = 100;
+    public final int videoQueueDepth;
+    public final int audioQueueDepth;
+    public final int subtitleQueueDepth;
+    // First thing to go wrong on any thread, rethrown from run(); errors included, so a decoder never dies unnoticed
+    private volatile Throwable failure;
+    // Only changed by the demuxing thread; read by close() to tell whether it is called from a decoder
+    private final List<Decoder> decoders = new CopyOnWriteArrayList<Decoder>();
+
+    FFPipelinedMediaStream(Builder builder) throws IOException {
+        super(builder);
+        this.videoQueueDepth = builder.videoQueueDepth;
+        this.audioQueueDepth = builder.audioQueueDepth;
+        this.subtitleQueueDepth = builder.subtitleQueueDepth;
+    }
+
+    @Override
+    public void run() {
+        if (!enter())
+            throw new IllegalStateException("stream closed");
+        try {
+            demux();
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * Demuxes the container on the calling thread, feeding the decoder threads until the end of the media.
+     * Returns once every decoder thread is done.
+     */
+    private void demux() {
+        started = playing = true;
+        failure = null;
+        begin();
+
+        Decoder video = videoStream != null ? new Decoder(videoStream, videoQueueDepth) : null;
+        Decoder audio = audioStream != null ? new Decoder(audioStream, audioQueueDepth) : null;
+        Decoder subtitle = subtitleStream != null ? new Decoder(subtitleStream, subtitleQueueDepth) : null;
+        decoders.clear();
+        for (Decoder decoder : new Decoder[]{video, audio, subtitle}) {
+            if (decoder != null) {
+                decoders.add(decoder);
+                decoder.start();
+            }
+        }
+
+        AVPacket packet = new AVPacket();
+        av_init_packet(packet.getPointer());
+        try {
+            while (failure == null && awaitPlaying()) {
+                applySeek();
+                if (media.readFrame(packet) < 0)
+                    break;
+
+                int index = packet.getStreamIndex();
+                Decoder target = null;
+                if (video != null && index == video.stream.index()) {
+                    target = video;
+                } else if (audio != null && index == audio.stream.index()) {
+                    target = audio;
+                } else if (subtitle != null && index == subtitle.stream.index()) {
+                    target = subtitle;
+                }
+
+                if (target == null) {
+                    av_free_packet(packet.getPointer());
+                    continue;
+                }
+                // The packet is about to outlive the next call to av_read_frame, so it must own its data
+                // rather than point into the demuxer's buffers
+                int err = av_dup_packet(packet.getPointer());
+                if (err < 0) {
+                    av_free_packet(packet.getPointer());
+                    throw new StreamException("failed to buffer packet: " + err, err);
+                }
+                target.offer(packet);
+
+                packet = new AVPacket();
+                av_init_packet(packet.getPointer());
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            for (Decoder decoder : decoders) {
+                decoder.offer(END_OF_STREAM);
+            }
+            for (Decoder decoder : decoders) {
+                try {
+                    decoder.join();
+                } catch (InterruptedException e) {
+                    fail(new IllegalStateException("interrupted while waiting for decoder"));
+                }
+            }
+        }
+        finish();
+
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw (RuntimeException) failure;
+    }
+
+    /**
+     * Not supported: pipelined streams decode on threads of their own.
+     *
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public boolean step() {
+        throw new UnsupportedOperationException("pipelined streams cannot be stepped");
+    }
+
+    @Override
+    protected boolean onDecodingThread() {
+        return super.onDecodingThread() || decoders.contains(Thread.currentThread());
+    }
+
+    @Override
+    protected void flushDecoders() {
+        // Codecs may only be flushed by the threads using them, and only once they are done with
+        // whatever packet they are decoding; whatever they deliver until then precedes the seek anyway
+        for (Decoder decoder : decoders) {
+            decoder.flush();
+        }
+    }
+
+    private void fail(Throwable e) {
+        // Only the first failure is of interest; the rest are usually consequences of it
+        if (failure == null)
+            failure = e;
+    }
+
+    /**
+     * Decoder thread for a single stream.
+     */
+    private class Decoder extends Thread {
+        private final FFStream stream;
+        private final BlockingQueue<AVPacket> queue;
+        private final Semaphore flushed = new Semaphore(0);
+
+        private Decoder(FFStream stream, int depth) {
+            super("JAVI " + stream.type() + " decoder #" + stream.index());
+            this.stream = stream;
+            queue = new ArrayBlockingQueue<AVPacket>(depth);
+            setDaemon(true);
+        }
+
+        /**
+         * Queues a packet for decoding, blocking while the queue is full.
+         * If the decoder is gone in the meantime, the packet is dropped instead.
+         */
+        private void offer(AVPacket packet) {
+            try {
+                while (!queue.offer(packet, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    // Whatever ended it was recorded as the failure, which also ends demuxing
+                    if (!isAlive()) {
+                        if (packet != END_OF_STREAM)
+                            av_free_packet(packet.getPointer());
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (packet != END_OF_STREAM)
+                    av_free_packet(packet.getPointer());
+                throw new IllegalStateException("interrupted while queueing packet");
+            }
+        }
+
+        /**
+         * Drops all queued packets and flushes the codec, blocking until the decoder is done.
+         */
+        private void flush() {
+            ArrayList<AVPacket> stale = new ArrayList<AVPacket>(queue.size());
+            queue.drainTo(stale);
+            for (AVPacket packet : stale) {
+                av_free_packet(packet.getPointer());
+            }
+            offer(FLUSH);
+            try {
+                while (!flushed.tryAcquire(OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (!isAlive())
+                        return;
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("interrupted while flushing decoder");
+            }
+        }
+
+        @Override
+        public void run() {
+            IntByReference finished = new IntByReference();
+            AVFrame.ByReference frame = null;
+            AVSubtitle subtitle = null;
+            if (stream instanceof FFSubtitleStream) {
+                subtitle = new AVSubtitle();
+            } else {
+                frame = avcodec_alloc_frame();
+            }
+
+            try {
+                AVPacket packet;
+                while ((packet = queue.take()) != END_OF_STREAM) {
+                    if (packet == FLUSH) {
+                        if (failure == null)
+                            avcodec_flush_buffers(stream.ffstream.codec.getPointer());
+                        flushed.release();
+                        continue;
+                    }
+                    try {
+                        // Once anything has failed or the stream is stopped, keep draining the queue so the demuxer never blocks on us
+                        if (failure == null && awaitPlaying()) {
+                            if (stream instanceof FFVideoStream) {
+                                decodeVideo(packet, frame, finished);
+                            } else if (stream instanceof FFAudioStream) {
+                                decodeAudio(packet, frame, finished);
+                            } else {
+                                decodeSubtitle(packet, subtitle, finished);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        fail(e);
+                    } finally {
+                        av_free_packet(packet.getPointer());
+                    }
+                }
+                // The demuxer reached the end of the media, unless stopped or failed; collect what the decoder holds
+                if (subtitle == null) {
+                    while (failure == null && awaitPlaying() && drainFrame(stream, frame, finished)) ;
+                }
+            } catch (InterruptedException e) {
+                fail(new IllegalStateException("decoder interrupted"));
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                if (frame != null)
+                    avcodec_free_frame(new PointerByReference(frame.getPointer()));
+            }
+        }
+    }
+}
@@ -23,11 +23,13 @@ import tk.ivybits.javi.ffmpeg.avformat.AVStream;
 import tk.ivybits.javi.ffmpeg.avutil.AVDictionary;
 import tk.ivybits.javi.media.Media;
 import tk.ivybits.javi.media.stream.Stream;
+import tk.ivybits.javi.media.stream.StreamException;
 
 import java.util.HashMap;
 import java.util.Locale;
 
 import static tk.ivybits.javi.ffmpeg.LibAVCodec.*;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.AV_NOPTS_VALUE;
 import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_dict_get;
 
 /**
@@ -38,7 +40,7 @@ public class FFStream implements Stream {
     public final AVStream ffstream;
     public final AVCodec codec;
     public final Locale language;
-    protected boolean closed;
+    protected boolean opened;
     private static final HashMap<String, Locale> ISO_3 = new HashMap<String, Locale>();
 
     static {
@@ -93,10 +95,9 @@ public class FFStream implements Stream {
         this.container = container;
         this.ffstream = ffstream;
         codec = avcodec_find_decoder(ffstream.codec.codec_id);
-        if (codec == null || avcodec_open2(ffstream.codec.getPointer(), codec.getPointer(), null) < 0) {
+        if (codec == null) {
             throw new IllegalArgumentException("unsupported " + type() + " codec: " + ffstream.codec.codec_id);
         }
-        ffstream.codec.read();
         AVDictionary.Entry entry = av_dict_get(ffstream.metadata, "language", null, 0);
         language = entry != null ? ISO_3.get(entry.value) : null;
     }
@@ -123,18 +124,76 @@ public class FFStream implements Stream {
 
     @Override
     public String codecName() {
-        return ffstream.codec.codec.name;
+        return codec.name;
     }
 
     @Override
     public String longCodecName() {
-        return ffstream.codec.codec.long_name;
+        return codec.long_name;
+    }
+
+    /**
+     * Converts a position in the stream to a timestamp in stream time base.
+     *
+     * @param millis The position, in milliseconds from the start of the stream.
+     * @return The timestamp.
+     */
+    long timestamp(long millis) {
+        long start = ffstream.start_time != AV_NOPTS_VALUE ? ffstream.start_time : 0;
+        return start + millis * ffstream.time_base.den / (ffstream.time_base.num * 1000L);
+    }
+
+    /**
+     * Converts a timestamp in stream time base to a position in the stream.
+     *
+     * @param timestamp The timestamp. Must not be {@link tk.ivybits.javi.ffmpeg.LibAVUtil#AV_NOPTS_VALUE}.
+     * @return The position, in milliseconds from the start of the stream.
+     */
+    long millis(long timestamp) {
+        long start = ffstream.start_time != AV_NOPTS_VALUE ? ffstream.start_time : 0;
+        return (timestamp - start) * 1000L * ffstream.time_base.num / ffstream.time_base.den;
+    }
+
+    /**
+     * Sets which packets of this stream the demuxer may drop.
+     *
+     * @param discard One of the {@link tk.ivybits.javi.ffmpeg.avcodec.AVDiscard} values.
+     */
+    void discard(int discard) {
+        ffstream.discard = discard;
+        ffstream.writeField("discard");
+    }
+
+    /**
+     * Opens the decoder of this stream, if not already open.
+     * Decoder options must be written to the codec context beforehand.
+     *
+     * @throws StreamException Thrown if the decoder failed to open.
+     */
+    void open() {
+        if (opened)
+            return;
+        int err = avcodec_open2(ffstream.codec.getPointer(), codec.getPointer(), null);
+        if (err < 0)
+            throw new StreamException("failed to open " + type() + " decoder: " + err, err);
+        ffstream.codec.read();
+        opened = true;
+    }
+
+    /**
+     * Checks if the decoder of this stream is open.
+     *
+     * @return True if so, false otherwise.
+     */
+    boolean isOpen() {
+        return opened;
     }
 
     @Override
     public void close() {
-        if (!closed) {
+        if (opened) {
             avcodec_close(ffstream.codec.getPointer());
+            opened = false;
         }
     }
 }
@@ -32,12 +32,13 @@ public class FFVideoStream extends FFStream implements VideoStream {
 
     @Override
     public int width() {
-        return ffstream.codec.width;
+        // Read live: opening the decoder at reduced resolution changes the dimensions
+        return ffstream.codec.getWidth();
     }
 
     @Override
     public int height() {
-        return ffstream.codec.height;
+        return ffstream.codec.getHeight();
     }
 
     @Override
@@ -0,0 +1,134 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.avutil.AVFrame;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.*;
+
+/**
+ * Fixed ring of refcounted frames between a decoder and the thread presenting its output.
+ * <p/>
+ * The decoder moves its references into free slots and publishes them; the presenter takes published slots in
+ * order and releases them once done, returning them to the free list. The decoder therefore runs at most as many
+ * frames ahead as there are slots.
+ */
+final class FrameRing {
+    // Marks the end of the published frames; never loaded
+    private static final FFFrame END = new FFFrame(null, null);
+    private final FFFrame[] slots;
+    private final BlockingQueue<FFFrame> free, ready;
+    private boolean closed;
+
+    FrameRing(int depth) {
+        slots = new FFFrame[depth];
+        free = new ArrayBlockingQueue<FFFrame>(depth);
+        // One more than the slots, so the end marker always fits
+        ready = new ArrayBlockingQueue<FFFrame>(depth + 1);
+        for (int i = 0; i != depth; i++) {
+            slots[i] = new FFFrame(new AVFrame(av_frame_alloc()), this);
+            free.add(slots[i]);
+        }
+    }
+
+    /**
+     * Takes a free slot, waiting for the presenter to release one if there is none.
+     *
+     * @param timeout How long to wait, in milliseconds.
+     * @return The slot, or null if none was released in time.
+     */
+    FFFrame acquire(long timeout) {
+        try {
+            return free.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("interrupted while waiting for a free frame");
+        }
+    }
+
+    /**
+     * Hands a filled slot to the presenter.
+     */
+    void publish(FFFrame frame) {
+        ready.add(frame);
+    }
+
+    /**
+     * Tells the presenter no more frames will follow.
+     */
+    void finish() {
+        ready.add(END);
+    }
+
+    /**
+     * Takes the next published slot, waiting for the decoder if there is none.
+     *
+     * @return The slot, or null at the end of the stream.
+     */
+    FFFrame next() {
+        try {
+            FFFrame frame = ready.take();
+            return frame != END ? frame : null;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("interrupted while waiting for a decoded frame");
+        }
+    }
+
+    /**
+     * Drops a slot's reference, and returns the slot to the free list.
+     */
+    void recycle(FFFrame frame) {
+        av_frame_unref(frame.frame.getPointer());
+        free.add(frame);
+    }
+
+    /**
+     * Drops every published frame that was not yet presented. Done on seek.
+     */
+    void clear() {
+        ArrayList<FFFrame> stale = new ArrayList<FFFrame>(slots.length);
+        ready.drainTo(stale);
+        for (FFFrame frame : stale) {
+            if (frame != END) {
+                frame.recycle();
+            } else {
+                ready.add(END);
+            }
+        }
+    }
+
+    /**
+     * Frees all slots. Must only be called once the presenter is done.
+     */
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (FFFrame slot : slots) {
+            // Frees the slot's reference along with it, should it still hold one
+            av_frame_free(new PointerByReference(slot.frame.getPointer()));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.Pointer;
+import tk.ivybits.javi.ffmpeg.avformat.AVFormatContext;
+import tk.ivybits.javi.ffmpeg.avutil.Macros;
+import tk.ivybits.javi.media.OpenOptions;
+
+import static tk.ivybits.javi.ffmpeg.LibAVFormat.AVIOInterruptCallback;
+
+/**
+ * Interrupt callback of a format context, aborting blocking I/O once cancelled or past a deadline.
+ * <p/>
+ * FFmpeg polls the callback while it waits on I/O; a non-zero return makes the call in progress fail with
+ * {@link #AVERROR_EXIT}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+final class Interrupter implements AVIOInterruptCallback {
+    static final int AVERROR_EXIT = -Macros.makeBETag('E', 'X', 'I', 'T');
+    private static final long NO_DEADLINE = 0;
+    private volatile boolean cancelled;
+    // System.nanoTime() past which I/O is aborted, or NO_DEADLINE
+    private volatile long deadline = NO_DEADLINE;
+    private volatile boolean expired;
+
+    @Override
+    public int invoke(Pointer opaque) {
+        if (cancelled)
+            return 1;
+        long deadline = this.deadline;
+        if (deadline != NO_DEADLINE && System.nanoTime() - deadline > 0) {
+            expired = true;
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Installs this callback in a format context, if the options it is opened with call for aborting I/O.
+     * Must be done before the context is opened to cover opening.
+     * <p/>
+     * FFmpeg calls the callback on every block it reads, which costs a few small objects each time, so it is
+     * left out unless needed. The context only holds a native pointer to the callback, so this object must be
+     * kept reachable for as long as the context is open.
+     *
+     * @param context The format context.
+     * @param options The options the context is opened with.
+     */
+    void install(AVFormatContext context, OpenOptions options) {
+        if (!options.cancellable && options.openTimeout <= 0 && options.readTimeout <= 0)
+            return;
+        context.interrupt_callback = this;
+        context.writeField("interrupt_callback");
+        context.interrupt_opaque = null;
+        context.writeField("interrupt_opaque");
+    }
+
+    /**
+     * Aborts the I/O in progress, and any started later until {@link #reset()}.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Lets I/O through again after {@link #cancel()}, once nothing is left to abort.
+     */
+    void reset() {
+        cancelled = false;
+    }
+
+    /**
+     * Checks if I/O was cancelled.
+     *
+     * @return True if so, false otherwise.
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Starts the clock on I/O about to be done.
+     *
+     * @param timeout The time the I/O may take, in milliseconds, or 0 for no limit.
+     */
+    void arm(long timeout) {
+        expired = false;
+        if (timeout <= 0) {
+            deadline = NO_DEADLINE;
+            return;
+        }
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        this.deadline = deadline != NO_DEADLINE ? deadline : deadline + 1;
+    }
+
+    /**
+     * Stops the clock, once the I/O is done.
+     *
+     * @return True if the I/O was aborted for running past the deadline, false otherwise.
+     */
+    boolean disarm() {
+        deadline = NO_DEADLINE;
+        return expired;
+    }
+}
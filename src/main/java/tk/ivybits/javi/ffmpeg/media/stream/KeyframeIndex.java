@@ -0,0 +1,417 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import tk.ivybits.javi.ffmpeg.avcodec.AVPacket;
+import tk.ivybits.javi.ffmpeg.avformat.AVFormatContext;
+import tk.ivybits.javi.media.OpenOptions;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.av_free_packet;
+import static tk.ivybits.javi.ffmpeg.LibAVCodec.av_init_packet;
+import static tk.ivybits.javi.ffmpeg.LibAVFormat.*;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.AV_NOPTS_VALUE;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_dict_free;
+
+/**
+ * Index of every packet in a container, used to seek accurately.
+ * <p/>
+ * Records the timestamp, byte position and keyframe flag of each packet in a single demux-only pass.
+ * Indices of local files are saved to sidecar files keyed by the path, size and modification time of the file,
+ * and the options that decide where demuxing starts, so that a file is only ever scanned once.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class KeyframeIndex {
+    /**
+     * Directory sidecar files are kept in.
+     */
+    public static final File DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "javi-index");
+    private static final int MAGIC = 0x4A4B4649; // "JKFI"
+    private static final int VERSION = 2;
+    private final long[][] timestamps, positions;
+    private final byte[][] flags;
+    // Packets of each stream flagged as keyframes, ordered by timestamp
+    private final int[][] keyframes;
+
+    private KeyframeIndex(long[][] timestamps, long[][] positions, byte[][] flags) {
+        this.timestamps = timestamps;
+        this.positions = positions;
+        this.flags = flags;
+        keyframes = new int[timestamps.length][];
+        for (int s = 0; s != timestamps.length; s++) {
+            final long[] ts = timestamps[s];
+            int count = 0;
+            Integer[] order = new Integer[ts.length];
+            for (int i = 0; i != ts.length; i++) {
+                if ((flags[s][i] & AVPacket.AV_PKT_FLAG_KEY) != 0 && ts[i] != AV_NOPTS_VALUE)
+                    order[count++] = i;
+            }
+            // Keyframes are almost always stored in presentation order already, but nothing guarantees it
+            Arrays.sort(order, 0, count, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return ts[a] < ts[b] ? -1 : ts[a] == ts[b] ? 0 : 1;
+                }
+            });
+            keyframes[s] = new int[count];
+            for (int i = 0; i != count; i++)
+                keyframes[s][i] = order[i];
+        }
+    }
+
+    /**
+     * Fetches the index of a local file, scanning the file if no up-to-date sidecar of it exists.
+     * <p/>
+     * Failure to save the sidecar is not fatal; the file will just be scanned again next time.
+     *
+     * @param file The file to index.
+     * @return The index.
+     * @throws IOException Thrown if the file could not be read.
+     * @since 1.0
+     */
+    public static KeyframeIndex of(File file) throws IOException {
+        return of(file, OpenOptions.DEFAULT);
+    }
+
+    /**
+     * Fetches the index of a local file, scanning the file if no up-to-date sidecar of it exists.
+     * <p/>
+     * Failure to save the sidecar is not fatal; the file will just be scanned again next time.
+     *
+     * @param file    The file to index.
+     * @param options The options the file is opened with for playback, to scan it with.
+     * @return The index.
+     * @throws IOException Thrown if the file could not be read.
+     * @since 1.0
+     */
+    public static KeyframeIndex of(File file, OpenOptions options) throws IOException {
+        File sidecar = sidecar(file);
+        KeyframeIndex index = load(sidecar, file, options);
+        if (index == null) {
+            index = scan(file.getAbsolutePath(), options);
+            try {
+                index.save(sidecar, file, options);
+            } catch (IOException ignored) {
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Builds an index of a container by demuxing every packet in it. Nothing is decoded.
+     *
+     * @param source The path or URL of the container.
+     * @return The index.
+     * @throws IOException Thrown if the container could not be opened.
+     * @since 1.0
+     */
+    public static KeyframeIndex scan(String source) throws IOException {
+        return scan(source, OpenOptions.DEFAULT);
+    }
+
+    /**
+     * Builds an index of a container by demuxing every packet in it. Nothing is decoded.
+     * <p/>
+     * The container is probed the way the media it is for was, so that the index describes the same streams,
+     * and opening and reading it are bounded by the same timeouts.
+     *
+     * @param source  The path or URL of the container.
+     * @param options The options the container is opened with for playback, to scan it with.
+     * @return The index.
+     * @throws IOException Thrown if the container could not be opened, or opening or reading it timed out.
+     * @since 1.0
+     */
+    public static KeyframeIndex scan(String source, OpenOptions options) throws IOException {
+        Pointer format = FFMedia.inputFormat(options);
+        // A context of our own, so that scanning does not disturb any playback of the same container
+        PointerByReference ppFormatCtx = new PointerByReference(avformat_alloc_context());
+        if (ppFormatCtx.getValue() == null)
+            throw new IOException("failed to allocate format context");
+        Interrupter interrupter = new Interrupter();
+        interrupter.install(new AVFormatContext(ppFormatCtx.getValue()), options);
+        interrupter.arm(options.openTimeout);
+
+        PointerByReference dictionary = new PointerByReference();
+        int err;
+        try {
+            FFMedia.probeOptions(dictionary, options);
+            // avformat_open_input frees the format context itself on failure
+            err = avformat_open_input(ppFormatCtx, source, format, dictionary);
+        } finally {
+            av_dict_free(dictionary);
+        }
+        if (err != 0)
+            throw timedOut(interrupter, options.openTimeout, "failed to open video file: " + source, err);
+        AVFormatContext formatContext = new AVFormatContext(ppFormatCtx.getValue());
+        try {
+            err = av_find_stream_info(formatContext.getPointer());
+            if (err < 0)
+                throw timedOut(interrupter, options.openTimeout, "failed to find stream info", err);
+            interrupter.disarm();
+            formatContext.read();
+
+            int streams = formatContext.nb_streams;
+            long[][] timestamps = new long[streams][256], positions = new long[streams][256];
+            byte[][] flags = new byte[streams][256];
+            int[] counts = new int[streams];
+
+            AVPacket packet = new AVPacket();
+            av_init_packet(packet.getPointer());
+            while (true) {
+                interrupter.arm(options.readTimeout);
+                err = av_read_frame(formatContext.getPointer(), packet.getPointer());
+                if (interrupter.disarm() && err == Interrupter.AVERROR_EXIT)
+                    throw new InterruptedIOException("read timed out after " + options.readTimeout + "ms");
+                if (err < 0)
+                    break;
+                int s = packet.getStreamIndex();
+                // Streams may appear mid-file in some formats; those were never exposed, so neither are their packets
+                if (s < streams) {
+                    int n = counts[s]++;
+                    if (n == timestamps[s].length) {
+                        timestamps[s] = Arrays.copyOf(timestamps[s], n * 2);
+                        positions[s] = Arrays.copyOf(positions[s], n * 2);
+                        flags[s] = Arrays.copyOf(flags[s], n * 2);
+                    }
+                    long pts = packet.getPts();
+                    timestamps[s][n] = pts != AV_NOPTS_VALUE ? pts : packet.getDts();
+                    positions[s][n] = packet.getPos();
+                    flags[s][n] = (byte) packet.getFlags();
+                }
+                av_free_packet(packet.getPointer());
+            }
+
+            for (int s = 0; s != streams; s++) {
+                timestamps[s] = Arrays.copyOf(timestamps[s], counts[s]);
+                positions[s] = Arrays.copyOf(positions[s], counts[s]);
+                flags[s] = Arrays.copyOf(flags[s], counts[s]);
+            }
+            return new KeyframeIndex(timestamps, positions, flags);
+        } finally {
+            avformat_close_input(new PointerByReference(formatContext.getPointer()));
+        }
+    }
+
+    /**
+     * Builds the exception for a container that failed to open, and stops the open timeout.
+     *
+     * @param interrupter The interrupter of the container.
+     * @param timeout     The open timeout, in milliseconds.
+     * @param message     The message, should opening not have timed out.
+     * @param err         The error opening failed with.
+     * @return The exception: an {@link InterruptedIOException} if opening was aborted for timing out.
+     */
+    private static IOException timedOut(Interrupter interrupter, long timeout, String message, int err) {
+        if (interrupter.disarm() && err == Interrupter.AVERROR_EXIT)
+            return new InterruptedIOException("timed out after " + timeout + "ms: " + message);
+        return new IOException(message + ": " + err);
+    }
+
+    /**
+     * Loads the sidecar of a file.
+     *
+     * @param sidecar The sidecar file.
+     * @param file    The indexed file.
+     * @param options The options the file is opened with.
+     * @return The index, or null if the sidecar is missing, unreadable or does not match the file as it is now.
+     */
+    private static KeyframeIndex load(File sidecar, File file, OpenOptions options) {
+        if (!sidecar.isFile())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(sidecar))));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(file.getAbsolutePath())
+                    || in.readLong() != file.length() || in.readLong() != file.lastModified()
+                    || !in.readUTF().equals(format(options)) || in.readInt() != options.skipInitialBytes)
+                return null;
+
+            int streams = in.readInt();
+            long[][] timestamps = new long[streams][], positions = new long[streams][];
+            byte[][] flags = new byte[streams][];
+            for (int s = 0; s != streams; s++) {
+                int count = in.readInt();
+                timestamps[s] = new long[count];
+                positions[s] = new long[count];
+                flags[s] = new byte[count];
+                for (int i = 0; i != count; i++) {
+                    timestamps[s][i] = in.readLong();
+                    positions[s][i] = in.readLong();
+                    flags[s][i] = in.readByte();
+                }
+            }
+            return new KeyframeIndex(timestamps, positions, flags);
+        } catch (IOException e) {
+            // A truncated or corrupt sidecar is as good as none
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves this index as the sidecar of a file.
+     *
+     * @param sidecar The sidecar file.
+     * @param file    The indexed file.
+     * @param options The options the file was scanned with.
+     * @throws IOException Thrown if the sidecar could not be written.
+     */
+    private void save(File sidecar, File file, OpenOptions options) throws IOException {
+        File parent = sidecar.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("could not create index directory: " + parent);
+        // Written aside and renamed into place, so that concurrent readers never see a partial sidecar
+        File temp = File.createTempFile(sidecar.getName(), ".tmp", parent);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(file.getAbsolutePath());
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeUTF(format(options));
+            out.writeInt(options.skipInitialBytes);
+            out.writeInt(timestamps.length);
+            for (int s = 0; s != timestamps.length; s++) {
+                out.writeInt(timestamps[s].length);
+                for (int i = 0; i != timestamps[s].length; i++) {
+                    out.writeLong(timestamps[s][i]);
+                    out.writeLong(positions[s][i]);
+                    out.writeByte(flags[s][i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(sidecar)) {
+            sidecar.delete();
+            if (!temp.renameTo(sidecar)) {
+                temp.delete();
+                throw new IOException("could not write index: " + sidecar);
+            }
+        }
+    }
+
+    private static String format(OpenOptions options) {
+        return options.format != null ? options.format : "";
+    }
+
+    private static File sidecar(File file) {
+        String path = file.getAbsolutePath();
+        return new File(DIRECTORY, file.getName() + "-" + Integer.toHexString(path.hashCode()) + ".idx");
+    }
+
+    /**
+     * Fetches the number of streams indexed.
+     *
+     * @return The number of streams.
+     * @since 1.0
+     */
+    public int streams() {
+        return timestamps.length;
+    }
+
+    /**
+     * Fetches the number of packets indexed for a stream.
+     *
+     * @param stream The index of the stream.
+     * @return The number of packets, in demux order.
+     * @since 1.0
+     */
+    public int packets(int stream) {
+        return timestamps[stream].length;
+    }
+
+    /**
+     * Fetches the timestamp of a packet.
+     *
+     * @param stream The index of the stream.
+     * @param packet The index of the packet in the stream.
+     * @return The presentation timestamp of the packet, its decoding timestamp if it has none, or
+     *         {@link tk.ivybits.javi.ffmpeg.LibAVUtil#AV_NOPTS_VALUE} if neither is known. In stream time base.
+     * @since 1.0
+     */
+    public long timestamp(int stream, int packet) {
+        return timestamps[stream][packet];
+    }
+
+    /**
+     * Fetches the byte position of a packet in the container.
+     *
+     * @param stream The index of the stream.
+     * @param packet The index of the packet in the stream.
+     * @return The byte position, or -1 if unknown.
+     * @since 1.0
+     */
+    public long position(int stream, int packet) {
+        return positions[stream][packet];
+    }
+
+    /**
+     * Checks if a packet is a keyframe.
+     *
+     * @param stream The index of the stream.
+     * @param packet The index of the packet in the stream.
+     * @return True if so, false otherwise.
+     * @since 1.0
+     */
+    public boolean keyframe(int stream, int packet) {
+        return (flags[stream][packet] & AVPacket.AV_PKT_FLAG_KEY) != 0;
+    }
+
+    /**
+     * Finds the last keyframe at or before a timestamp.
+     *
+     * @param stream    The index of the stream.
+     * @param timestamp The timestamp, in stream time base.
+     * @return The index of the keyframe packet, or -1 if no keyframe precedes the timestamp.
+     * @since 1.0
+     */
+    public int keyframeBefore(int stream, long timestamp) {
+        int[] keys = keyframes[stream];
+        long[] ts = timestamps[stream];
+        int low = 0, high = keys.length - 1, found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ts[keys[mid]] <= timestamp) {
+                found = keys[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Small cache of direct {@code ByteBuffer} views onto native memory.
+ * <p/>
+ * FFmpeg decodes into buffers taken from a pool, so the same few addresses come around again and again.
+ * Handing out the view already created for an address saves allocating a new {@code DirectByteBuffer}
+ * for every plane of every frame.
+ * </p>
+ * Not thread-safe; each decoding thread should use its own cache.
+ */
+final class ViewCache {
+    private final long[] addresses;
+    private final ByteBuffer[] views;
+    private int next;
+
+    /**
+     * Creates a view cache.
+     *
+     * @param capacity The maximum number of views remembered at once.
+     */
+    ViewCache(int capacity) {
+        addresses = new long[capacity];
+        views = new ByteBuffer[capacity];
+    }
+
+    /**
+     * Fetches a view of a region of native memory.
+     *
+     * @param address The address of the region.
+     * @param size    The size of the region, in bytes.
+     * @return A direct buffer spanning the region, with its position reset to 0.
+     */
+    ByteBuffer view(long address, int size) {
+        for (int i = 0; i != views.length; i++) {
+            ByteBuffer view = views[i];
+            if (view != null && addresses[i] == address && view.capacity() == size) {
+                view.clear();
+                return view;
+            }
+        }
+        // Replace the oldest entry
+        ByteBuffer view = Native.getDirectByteBuffer(address, size);
+        addresses[next] = address;
+        views[next] = view;
+        next = (next + 1) % views.length;
+        return view;
+    }
+}
@@ -95,6 +95,15 @@ public class SWAudioTranscoder implements Transcoder {
         return result;
     }
 
+    @Override
+    public Frame transcode(Frame in, Frame out) {
+        Frame result = transcode(in);
+        out.reset(result.planes(), result.samples());
+        for (int p = 0; p != result.planes(); p++)
+            out.plane(p).set(result.plane(p).buffer(), result.plane(p).linesize());
+        return out;
+    }
+
     @Override
     public void close() {
         if (dstData.getValue() != null) {
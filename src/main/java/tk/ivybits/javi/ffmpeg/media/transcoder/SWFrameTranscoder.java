@@ -20,6 +20,7 @@ package tk.ivybits.javi.ffmpeg.media.transcoder;
 
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
+import tk.ivybits.javi.ffmpeg.Natives;
 import tk.ivybits.javi.ffmpeg.avcodec.AVPicture;
 import tk.ivybits.javi.format.PixelFormat;
 import tk.ivybits.javi.media.stream.Frame;
@@ -27,87 +28,388 @@ import tk.ivybits.javi.media.transcoder.Filter;
 import tk.ivybits.javi.media.transcoder.Transcoder;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import static tk.ivybits.javi.ffmpeg.LibAVCodec.avpicture_fill;
 import static tk.ivybits.javi.ffmpeg.LibAVCodec.avpicture_get_size;
-import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_free;
-import static tk.ivybits.javi.ffmpeg.LibAVUtil.av_malloc;
-import static tk.ivybits.javi.ffmpeg.LibSWScale.sws_freeContext;
-import static tk.ivybits.javi.ffmpeg.LibSWScale.sws_getContext;
+import static tk.ivybits.javi.ffmpeg.LibAVUtil.*;
+import static tk.ivybits.javi.ffmpeg.LibSWScale.SWS_BICUBIC;
 import static tk.ivybits.javi.ffmpeg.LibSWScale.sws_scale;
 
 /**
+ * Video transcoder backed by swscale.
+ * <p/>
+ * Everything a conversion needs is set up once: transcoding a frame allocates nothing, as long as the planes
+ * of the frames passed in are the same buffers as last time. Neither transcoder nor frames it returns are thread-safe.
+ * <p/>
+ * Large frames may be scaled in slices: the destination is split into horizontal bands, each scaled from the source
+ * rows it maps to by a context of its own, all at once on a shared {@link ForkJoinPool}. Band edges fall on rows
+ * that map to whole source rows and whole chroma rows on both sides. Scaling filters see the edge rows of a band
+ * repeated past it rather than the rows of its neighbour, which wide filters may show as faint seams. Palette and
+ * hardware formats are always scaled in one piece.
+ *
  * @version 1.0
  * @since 1.0
  */
 public class SWFrameTranscoder implements Transcoder {
+    private static final int MAX_PLANES = AVPicture.AV_NUM_DATA_POINTERS;
+    // AVPixFmtDescriptor: const char *name; uint8_t nb_components, log2_chroma_w, log2_chroma_h, flags; ...
+    private static final int LOG2_CHROMA_H_OFFSET = Pointer.SIZE + 2, FLAGS_OFFSET = Pointer.SIZE + 3;
     private Pointer swsContext;
-    private AVPicture dstPicture = new AVPicture();
-    private ByteBuffer destination;
-    private Pointer pDestination;
+    private final ByteBuffer destination;
+    // Views of the planes of the destination buffer, and the frame made of them
+    private final Frame.Plane[] planes;
+    private final Frame output;
+    // Pointer and stride arrays passed to sws_scale, along with the buffers they were last filled in from
+    private final Pointer srcData, srcStrides, dstData, dstStrides;
+    private final ByteBuffer[] srcBuffers = new ByteBuffer[MAX_PLANES], dstBuffers = new ByteBuffer[MAX_PLANES];
     protected final int srcWidth;
     protected final int srcHeight;
     protected final PixelFormat srcPixelFormat;
     protected final int dstWidth;
     protected final int dstHeight;
     protected final PixelFormat dstPixelFormat;
+    protected final int flags;
     protected final List<Filter> filters;
+    // Bands scaled concurrently, or null if scaling in one piece
+    private final Band[] bands;
+    private final Slicer slicer;
 
     public SWFrameTranscoder(int srcWidth, int srcHeight, PixelFormat srcPixelFormat,
                              int dstWidth, int dstHeight, PixelFormat dstPixelFormat,
                              List<Filter> filters) {
+        this(srcWidth, srcHeight, srcPixelFormat, dstWidth, dstHeight, dstPixelFormat, SWS_BICUBIC, 1, filters);
+    }
+
+    /**
+     * Creates a transcoder, leasing its swscale context from {@link SwsContextCache#SHARED}.
+     *
+     * @param flags  The SWS_* flags to scale with: exactly one algorithm, plus any accuracy flags.
+     * @param slices The maximum number of bands to scale concurrently, or 1 to scale on the calling thread.
+     *               Frames too small to split that many ways are split fewer ways.
+     * @throws IllegalArgumentException Thrown if swscale does not support the conversion.
+     * @since 1.0
+     */
+    public SWFrameTranscoder(int srcWidth, int srcHeight, PixelFormat srcPixelFormat,
+                             int dstWidth, int dstHeight, PixelFormat dstPixelFormat,
+                             int flags, int slices, List<Filter> filters) {
         this.srcWidth = srcWidth;
         this.srcHeight = srcHeight;
         this.srcPixelFormat = srcPixelFormat;
         this.dstWidth = dstWidth;
         this.dstHeight = dstHeight;
         this.dstPixelFormat = dstPixelFormat;
+        this.flags = flags;
         this.filters = filters;
 
-        swsContext = sws_getContext(
+        swsContext = SwsContextCache.SHARED.lease(
                 srcWidth, srcHeight, srcPixelFormat.id,
                 dstWidth, dstHeight, dstPixelFormat.id,
-                0, null, null, null);
-        destination = ByteBuffer.allocateDirect(avpicture_get_size(dstPixelFormat.id, dstWidth, dstHeight));
-        pDestination = Native.getDirectBufferPointer(destination);
+                flags);
+        int size = avpicture_get_size(dstPixelFormat.id, dstWidth, dstHeight);
+        destination = ByteBuffer.allocateDirect(size);
+
+        // Lay the planes out in the destination buffer once, and carve a view out of it for each
+        AVPicture layout = new AVPicture();
+        Pointer base = Native.getDirectBufferPointer(destination);
+        avpicture_fill(layout.getPointer(), base, dstPixelFormat.id, dstWidth, dstHeight);
+        layout.read();
+        int count = 0;
+        while (count != MAX_PLANES && layout.linesize[count] != 0)
+            count++;
+        planes = new Frame.Plane[count];
+        for (int p = 0; p != count; p++) {
+            // Planes are packed back to back, so each one ends where the next one starts
+            int start = (int) (Pointer.nativeValue(layout.data[p]) - Pointer.nativeValue(base));
+            int end = p + 1 != count ? (int) (Pointer.nativeValue(layout.data[p + 1]) - Pointer.nativeValue(base)) : size;
+            ByteBuffer view = destination.duplicate();
+            view.position(start).limit(end);
+            planes[p] = new Frame.Plane(view.slice(), layout.linesize[p]);
+        }
+        output = new Frame(planes);
+
+        srcData = av_malloc(Pointer.SIZE * MAX_PLANES);
+        srcData.clear(Pointer.SIZE * MAX_PLANES);
+        srcStrides = av_malloc(4 * MAX_PLANES);
+        srcStrides.clear(4 * MAX_PLANES);
+        dstData = av_malloc(Pointer.SIZE * MAX_PLANES);
+        dstData.clear(Pointer.SIZE * MAX_PLANES);
+        dstStrides = av_malloc(4 * MAX_PLANES);
+        dstStrides.clear(4 * MAX_PLANES);
+
+        bands = slices > 1 ? split(slices) : null;
+        slicer = bands != null ? new Slicer() : null;
     }
 
+    /**
+     * Splits the destination into bands.
+     *
+     * @param slices The maximum number of bands.
+     * @return The bands, or null if the destination cannot be split.
+     */
+    private Band[] split(int slices) {
+        if (!sliceable(srcPixelFormat) || !sliceable(dstPixelFormat))
+            return null;
+        int srcChroma = 1 << log2ChromaHeight(srcPixelFormat), dstChroma = 1 << log2ChromaHeight(dstPixelFormat);
+        // Smallest run of destination rows that maps to a whole number of source rows
+        int gcd = gcd(srcHeight, dstHeight);
+        int dstUnit = dstHeight / gcd, srcUnit = srcHeight / gcd;
+        // Grown until it also covers whole chroma rows on both sides, so no band starts halfway into a chroma row
+        int step = dstUnit;
+        while (step % dstChroma != 0 || (step / dstUnit * srcUnit) % srcChroma != 0)
+            step += dstUnit;
+        int count = Math.min(slices, dstHeight / step);
+        if (count < 2)
+            return null;
+
+        ArrayList<Band> bands = new ArrayList<Band>(count);
+        int dstY = 0;
+        for (int i = 1; i <= count; i++) {
+            int end = i != count ? (int) ((long) dstHeight * i / count / step * step) : dstHeight;
+            if (end <= dstY)
+                continue;
+            int srcY = (int) ((long) dstY * srcHeight / dstHeight);
+            int srcEnd = end != dstHeight ? (int) ((long) end * srcHeight / dstHeight) : srcHeight;
+            bands.add(new Band(srcY, srcEnd - srcY, dstY, end - dstY));
+            dstY = end;
+        }
+        return bands.toArray(new Band[bands.size()]);
+    }
+
+    private static int log2ChromaHeight(PixelFormat format) {
+        Pointer descriptor = av_pix_fmt_desc_get(format.id);
+        return descriptor != null ? descriptor.getByte(LOG2_CHROMA_H_OFFSET) : 0;
+    }
+
+    /**
+     * Checks if frames of a format can be cut into bands of rows. Palettes would be offset along with the rows
+     * they colour, and hardware surfaces have no rows in memory to offset at all.
+     *
+     * @param format The format.
+     * @return True if so, false otherwise.
+     */
+    private static boolean sliceable(PixelFormat format) {
+        Pointer descriptor = av_pix_fmt_desc_get(format.id);
+        int unsliceable = AV_PIX_FMT_FLAG_PAL | AV_PIX_FMT_FLAG_PSEUDOPAL | AV_PIX_FMT_FLAG_HWACCEL;
+        return descriptor != null && (descriptor.getByte(FLAGS_OFFSET) & unsliceable) == 0;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Fetches the offset of a row within a plane.
+     *
+     * @param plane   The index of the plane.
+     * @param row     The row, in luma rows. Must be a multiple of the chroma subsampling.
+     * @param log2    The log2 of the chroma subsampling.
+     * @param strides The stride array.
+     * @return The offset, in bytes.
+     */
+    private static long rowOffset(int plane, int row, int log2, Pointer strides) {
+        // As in av_image_fill_pointers: only the two chroma planes are subsampled, alpha is not
+        int rows = plane == 1 || plane == 2 ? row >> log2 : row;
+        return (long) rows * strides.getInt(4 * plane);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The same frame is returned every time, overwritten by the next call.
+     */
     @Override
     public Frame transcode(Frame buffer) {
-        destination.position(0);
-        avpicture_fill(dstPicture.getPointer(), pDestination, dstPixelFormat.id, dstWidth, dstHeight);
-        dstPicture.read();
-
-        Pointer pointers = av_malloc(Native.POINTER_SIZE * 8);
-        pointers.clear(Native.POINTER_SIZE * 8);
-        int[] lineSizes = new int[8];
-
-        int i = 0;
-        for (Frame.Plane plane : buffer) {
-            pointers.setPointer(Native.POINTER_SIZE * i, Native.getDirectBufferPointer(plane.buffer()));
-            lineSizes[i++] = plane.linesize();
+        for (Frame.Plane plane : planes)
+            plane.buffer().clear();
+        bind(output, dstData, dstStrides, dstBuffers);
+        scale(buffer);
+        for (Filter f : filters)
+            f.apply(output);
+        return output;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The planes of {@code out} are written to directly if they match the layout of the output format: as many
+     * direct buffers, with the same line sizes, each large enough for its plane. Otherwise, they are re-pointed at
+     * the buffer of this transcoder, which is overwritten by the next call.
+     */
+    @Override
+    public Frame transcode(Frame in, Frame out) {
+        if (fits(out)) {
+            bind(out, dstData, dstStrides, dstBuffers);
+            scale(in);
+        } else {
+            transcode(in);
+            out.reset(planes.length, 1);
+            for (int p = 0; p != planes.length; p++)
+                out.plane(p).set(planes[p].buffer(), planes[p].linesize());
+            return out;
+        }
+        for (Filter f : filters)
+            f.apply(out);
+        return out;
+    }
+
+    /**
+     * Checks if the planes of a frame can be transcoded into directly.
+     *
+     * @param frame The frame.
+     * @return True if so, false otherwise.
+     */
+    private boolean fits(Frame frame) {
+        if (frame.planes() != planes.length)
+            return false;
+        for (int p = 0; p != planes.length; p++) {
+            Frame.Plane plane = frame.plane(p);
+            ByteBuffer buffer = plane.buffer();
+            if (buffer == null || !buffer.isDirect() || plane.linesize() != planes[p].linesize()
+                    || buffer.capacity() < planes[p].buffer().capacity())
+                return false;
         }
+        return true;
+    }
 
-        sws_scale(swsContext, pointers, lineSizes, 0, srcHeight, dstPicture.getPointer(), dstPicture.linesize);
-        av_free(pointers);
+    /**
+     * Fills in a pointer and stride array from the planes of a frame.
+     * <p/>
+     * Pointers are only looked up for buffers other than the ones the array was last filled in from.
+     *
+     * @param frame   The frame.
+     * @param data    The pointer array.
+     * @param strides The stride array.
+     * @param buffers The buffers the pointer array was last filled in from; updated.
+     */
+    private static void bind(Frame frame, Pointer data, Pointer strides, ByteBuffer[] buffers) {
+        int count = Math.min(frame.planes(), MAX_PLANES);
+        for (int p = 0; p != MAX_PLANES; p++) {
+            ByteBuffer buffer = p < count ? frame.plane(p).buffer() : null;
+            if (buffer != buffers[p]) {
+                data.setPointer(Pointer.SIZE * p, buffer != null ? Native.getDirectBufferPointer(buffer) : null);
+                buffers[p] = buffer;
+            }
+            strides.setInt(4 * p, p < count ? frame.plane(p).linesize() : 0);
+        }
+    }
 
-        i = 0;
-        for (; i < dstPicture.linesize.length && dstPicture.linesize[i] != 0; ++i) ;
-        Frame.Plane[] planes = new Frame.Plane[i];
-        for (int p = 0; p != i; p++) {
-            int l = dstPicture.linesize[p];
-            planes[p] = new Frame.Plane(Native.getDirectByteBuffer(Pointer.nativeValue(dstPicture.data[p]), l * dstHeight), l);
+    /**
+     * Scales a frame into whatever the destination arrays point to.
+     *
+     * @param in The frame.
+     */
+    private void scale(Frame in) {
+        bind(in, srcData, srcStrides, srcBuffers);
+        if (bands == null) {
+            sws_scale(swsContext, srcData, srcStrides, 0, srcHeight, dstData, dstStrides);
+            return;
         }
-        Frame result = new Frame(planes);
-        for (Filter f : filters)
-            f.apply(result);
-        return result;
+        for (Band band : bands) {
+            band.offset();
+            band.reinitialize();
+        }
+        slicer.reinitialize();
+        Pool.INSTANCE.invoke(slicer);
+    }
+
+    /**
+     * Runs every band, and waits for them all to finish.
+     */
+    private class Slicer extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(bands);
+        }
+    }
+
+    /**
+     * Horizontal band of the destination, along with the source rows it is scaled from.
+     */
+    private class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Pointer context;
+        private final int srcY, srcRows, dstY, dstRows;
+        // Pointer arrays into the rows of the band; strides are shared with the whole frame
+        private final Pointer bandSrcData, bandDstData;
+        private final int srcLog2, dstLog2;
+
+        Band(int srcY, int srcRows, int dstY, int dstRows) {
+            this.srcY = srcY;
+            this.srcRows = srcRows;
+            this.dstY = dstY;
+            this.dstRows = dstRows;
+            srcLog2 = log2ChromaHeight(srcPixelFormat);
+            dstLog2 = log2ChromaHeight(dstPixelFormat);
+            context = SwsContextCache.SHARED.lease(
+                    srcWidth, srcRows, srcPixelFormat.id,
+                    dstWidth, dstRows, dstPixelFormat.id,
+                    flags);
+            bandSrcData = av_malloc(Pointer.SIZE * MAX_PLANES);
+            bandDstData = av_malloc(Pointer.SIZE * MAX_PLANES);
+        }
+
+        /**
+         * Points the pointer arrays of this band at its rows of the frames currently bound.
+         */
+        void offset() {
+            for (int p = 0; p != MAX_PLANES; p++) {
+                long src = Natives.getAddress(srcData, Pointer.SIZE * p);
+                Natives.setAddress(bandSrcData, Pointer.SIZE * p, src != 0 ? src + rowOffset(p, srcY, srcLog2, srcStrides) : 0);
+                long dst = Natives.getAddress(dstData, Pointer.SIZE * p);
+                Natives.setAddress(bandDstData, Pointer.SIZE * p, dst != 0 ? dst + rowOffset(p, dstY, dstLog2, dstStrides) : 0);
+            }
+        }
+
+        @Override
+        protected void compute() {
+            sws_scale(context, bandSrcData, srcStrides, 0, srcRows, bandDstData, dstStrides);
+        }
+
+        void close() {
+            SwsContextCache.SHARED.release(context,
+                    srcWidth, srcRows, srcPixelFormat.id,
+                    dstWidth, dstRows, dstPixelFormat.id,
+                    flags);
+            av_free(bandSrcData);
+            av_free(bandDstData);
+        }
+    }
+
+    /**
+     * Pool bands are scaled on, created once first needed.
+     */
+    private static class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
     }
 
     @Override
     public void close() {
-        sws_freeContext(swsContext);
+        if (swsContext == null)
+            return;
+        SwsContextCache.SHARED.release(swsContext,
+                srcWidth, srcHeight, srcPixelFormat.id,
+                dstWidth, dstHeight, dstPixelFormat.id,
+                flags);
         swsContext = null;
+        av_free(srcData);
+        av_free(srcStrides);
+        av_free(dstData);
+        av_free(dstStrides);
+        if (bands != null) {
+            for (Band band : bands)
+                band.close();
+        }
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.transcoder;
+
+import com.sun.jna.Pointer;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static tk.ivybits.javi.ffmpeg.LibSWScale.sws_freeContext;
+import static tk.ivybits.javi.ffmpeg.LibSWScale.sws_getContext;
+
+/**
+ * Pool of idle swscale contexts, keyed by the conversion they were set up for.
+ * <p/>
+ * Setting up a context computes its filter coefficients, which costs far more than a typical conversion. Transcoders
+ * lease contexts from the pool and hand them back when closed, so that transcoders for a conversion seen before
+ * start right away. A context is only ever leased to one transcoder at a time, since contexts are not thread-safe.
+ * <p/>
+ * Once more than {@link #capacity} contexts are idle, the least recently returned ones are freed.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SwsContextCache {
+    /**
+     * Pool shared by all transcoders.
+     */
+    public static final SwsContextCache SHARED = new SwsContextCache(32);
+    public final int capacity;
+    // Idle contexts by conversion, least recently returned conversion first
+    private final LinkedHashMap<Key, ArrayDeque<Pointer>> idle = new LinkedHashMap<Key, ArrayDeque<Pointer>>(16, 0.75f, true);
+    private int size;
+
+    /**
+     * Creates a pool.
+     *
+     * @param capacity The maximum number of idle contexts kept.
+     * @throws IllegalArgumentException Thrown if the capacity is negative.
+     * @since 1.0
+     */
+    public SwsContextCache(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("negative capacity");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Leases a context for a conversion, setting one up if none is idle.
+     *
+     * @param srcWidth  The width of the source.
+     * @param srcHeight The height of the source.
+     * @param srcFormat The pixel format of the source.
+     * @param dstWidth  The width of the destination.
+     * @param dstHeight The height of the destination.
+     * @param dstFormat The pixel format of the destination.
+     * @param flags     The SWS_* flags: scaling algorithm and accuracy.
+     * @return The context.
+     * @throws IllegalArgumentException Thrown if swscale does not support the conversion.
+     * @since 1.0
+     */
+    public Pointer lease(int srcWidth, int srcHeight, int srcFormat, int dstWidth, int dstHeight, int dstFormat, int flags) {
+        Key key = new Key(srcWidth, srcHeight, srcFormat, dstWidth, dstHeight, dstFormat, flags);
+        synchronized (this) {
+            ArrayDeque<Pointer> contexts = idle.get(key);
+            if (contexts != null) {
+                Pointer context = contexts.poll();
+                if (contexts.isEmpty())
+                    idle.remove(key);
+                size--;
+                return context;
+            }
+        }
+        Pointer context = sws_getContext(srcWidth, srcHeight, srcFormat, dstWidth, dstHeight, dstFormat, flags, null, null, null);
+        if (context == null)
+            throw new IllegalArgumentException("unsupported conversion: " + key);
+        return context;
+    }
+
+    /**
+     * Hands a leased context back, for the next lease of the same conversion.
+     *
+     * @param context   The context. Must not be used afterwards.
+     * @param srcWidth  The width of the source it was leased for.
+     * @param srcHeight The height of the source.
+     * @param srcFormat The pixel format of the source.
+     * @param dstWidth  The width of the destination.
+     * @param dstHeight The height of the destination.
+     * @param dstFormat The pixel format of the destination.
+     * @param flags     The SWS_* flags: scaling algorithm and accuracy.
+     * @since 1.0
+     */
+    public void release(Pointer context, int srcWidth, int srcHeight, int srcFormat, int dstWidth, int dstHeight, int dstFormat, int flags) {
+        Key key = new Key(srcWidth, srcHeight, srcFormat, dstWidth, dstHeight, dstFormat, flags);
+        Pointer evicted = null;
+        synchronized (this) {
+            ArrayDeque<Pointer> contexts = idle.get(key);
+            if (contexts == null) {
+                contexts = new ArrayDeque<Pointer>(2);
+                idle.put(key, contexts);
+            }
+            contexts.push(context);
+            if (++size > capacity) {
+                Iterator<Map.Entry<Key, ArrayDeque<Pointer>>> eldest = idle.entrySet().iterator();
+                Map.Entry<Key, ArrayDeque<Pointer>> entry = eldest.next();
+                evicted = entry.getValue().pollLast();
+                if (entry.getValue().isEmpty())
+                    eldest.remove();
+                size--;
+            }
+        }
+        // Freed outside the lock, as freeing can take a while for large filters
+        if (evicted != null)
+            sws_freeContext(evicted);
+    }
+
+    /**
+     * Frees every idle context.
+     *
+     * @since 1.0
+     */
+    public void clear() {
+        ArrayDeque<Pointer> evicted = new ArrayDeque<Pointer>();
+        synchronized (this) {
+            for (ArrayDeque<Pointer> contexts : idle.values())
+                evicted.addAll(contexts);
+            idle.clear();
+            size = 0;
+        }
+        for (Pointer context : evicted)
+            sws_freeContext(context);
+    }
+
+    private static final class Key {
+        private final int srcWidth, srcHeight, srcFormat, dstWidth, dstHeight, dstFormat, flags;
+
+        Key(int srcWidth, int srcHeight, int srcFormat, int dstWidth, int dstHeight, int dstFormat, int flags) {
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
+            this.srcFormat = srcFormat;
+            this.dstWidth = dstWidth;
+            this.dstHeight = dstHeight;
+            this.dstFormat = dstFormat;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return srcWidth == k.srcWidth && srcHeight == k.srcHeight && srcFormat == k.srcFormat
+                    && dstWidth == k.dstWidth && dstHeight == k.dstHeight && dstFormat == k.dstFormat && flags == k.flags;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = srcWidth;
+            h = 31 * h + srcHeight;
+            h = 31 * h + srcFormat;
+            h = 31 * h + dstWidth;
+            h = 31 * h + dstHeight;
+            h = 31 * h + dstFormat;
+            return 31 * h + flags;
+        }
+
+        @Override
+        public String toString() {
+            return srcWidth + "x" + srcHeight + "/" + srcFormat + " -> " + dstWidth + "x" + dstHeight + "/" + dstFormat
+                    + " (flags 0x" + Integer.toHexString(flags) + ")";
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package tk.ivybits.javi.media;
 
+import tk.ivybits.javi.media.stream.MediaClock;
 import tk.ivybits.javi.media.stream.MediaStream;
+import tk.ivybits.javi.media.stream.Stream;
 
 import java.util.concurrent.locks.LockSupport;
 
 public class AVSync {
-    // If stream goes out of sync by anything larger than this (nano time), seek to catch up instead of sleep
-    private static final int SEEK_THRESHOLD = 2000000000;
-    private long lastPts;
+    // Frames running later than this behind the master clock are dropped rather than rendered (nano time)
+    private static final int DROP_THRESHOLD = 40000000;
     private long lost, frames;
     private MediaStream stream;
 
@@ -18,37 +19,37 @@ public class AVSync {
 
     public void sync(long duration, Runnable callback) {
         ++frames;
-        // Add in duration, which is the time that is spent waiting for the frame to render, so we get
-        // the time when this frame is rendered, and set it as the last frame.
-        // If duration is NEGATIVE, nothing should be rendered. We basically are subtracting the overdue
-        // time from time we started handling this frame, so we get the time on which the current frame
-        // should be rendered. If multiple frames are skipped, this still works, as the lastFrame will
-        // advance by the length of each lost frame until it goes back to sync,
-        // i.e. duration is back to positive.
-        long time = System.nanoTime();
-        duration -= time - lastPts;
-        if (duration < 0) {
-            if (duration < -SEEK_THRESHOLD) {
-                stream.seek(stream.position());
-                reset();
+        MediaClock clock = stream.clock();
+        // The clock already holds the presentation time of the frame being handled
+        long pts = clock.position(Stream.Type.STREAM_VIDEO);
+        // Video cannot be timed against itself; when it is master, it is timed against real time instead
+        boolean master = clock.source() == MediaClock.Master.VIDEO;
+        long delay = (pts - (master ? clock.external() : clock.time())) * 1000000;
+        if (delay < -DROP_THRESHOLD) {
+            if (master) {
+                // Nothing else to keep up with: just carry on from here, at whatever pace decoding allows
+                clock.sync(pts);
             } else {
-                // Video is behind audio; skip frame
-                lastPts = time + duration;
+                // Video is behind; skip the frame
+                ++lost;
+                return;
             }
-            ++lost;
-            return;
         }
-        LockSupport.parkNanos(duration);
+        // Never wait longer than the frame lasts, lest a timestamp jump stall playback
+        LockSupport.parkNanos(Math.min(delay, duration));
         try {
             callback.run();
         } catch (Exception e) {
             throw new IllegalStateException("exception raised in callback", e);
         }
-        lastPts = time + duration;
     }
 
     public void reset() {
-        lastPts = System.nanoTime();
+        // Realign real time with the video after a pause or seek
+        MediaClock clock = stream.clock();
+        long pts = clock.position(Stream.Type.STREAM_VIDEO);
+        if (pts >= 0 && clock.source() == MediaClock.Master.VIDEO)
+            clock.sync(pts);
     }
 
     public double frameLossRate() {
@@ -0,0 +1,259 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media;
+
+import tk.ivybits.javi.media.stream.MediaStream;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes many streams on a fixed number of threads, by {@link MediaStream#step() stepping} them in turn.
+ * <p/>
+ * Sessions take turns in round-robin order; in each turn, a session decodes as many packets as its priority.
+ * Paused sessions are set aside until resumed, so they take no decoding capacity away from the others.
+ * <p/>
+ * Handlers are called on the worker threads, and should return quickly: a handler that blocks holds up every
+ * session queued behind its own.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DecodeScheduler implements Closeable {
+    // How often sessions set aside while paused are checked for having been resumed, in milliseconds
+    private static final long IDLE_POLL = 10;
+    private final BlockingQueue<Session> runnable = new LinkedBlockingQueue<Session>();
+    private final ArrayList<Session> idle = new ArrayList<Session>();
+    private final AtomicLong lastRevived = new AtomicLong();
+    private final Thread[] workers;
+    private volatile boolean closed;
+
+    /**
+     * Creates a scheduler and starts its worker threads.
+     *
+     * @param workers The number of threads to decode on.
+     * @throws IllegalArgumentException Thrown if the number of threads is not positive.
+     * @since 1.0
+     */
+    public DecodeScheduler(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("worker count must be positive");
+        this.workers = new Thread[workers];
+        for (int i = 0; i != workers; i++) {
+            this.workers[i] = new Worker(i);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * Schedules a stream at the default priority of 1.
+     *
+     * @param stream The stream. Must not have been started.
+     * @return The session decoding the stream.
+     * @since 1.0
+     */
+    public Session submit(MediaStream stream) {
+        return submit(stream, 1);
+    }
+
+    /**
+     * Schedules a stream.
+     *
+     * @param stream   The stream. Must not have been started.
+     * @param priority The number of packets the stream decodes in each of its turns.
+     * @return The session decoding the stream.
+     * @throws IllegalArgumentException Thrown if the priority is not positive.
+     * @throws IllegalStateException    Thrown if the scheduler was closed.
+     * @since 1.0
+     */
+    public Session submit(MediaStream stream, int priority) {
+        if (closed)
+            throw new IllegalStateException("scheduler closed");
+        Session session = new Session(stream, priority);
+        runnable.add(session);
+        return session;
+    }
+
+    /**
+     * Stops decoding. Sessions not yet finished are left where they are; their streams are not closed.
+     *
+     * @since 1.0
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Thread worker : workers)
+            worker.interrupt();
+    }
+
+    /**
+     * Moves sessions resumed since they were set aside back in line, at most once every {@link #IDLE_POLL} ms.
+     */
+    private void revive() {
+        long now = System.nanoTime();
+        long last = lastRevived.get();
+        if (now - last < TimeUnit.MILLISECONDS.toNanos(IDLE_POLL) || !lastRevived.compareAndSet(last, now))
+            return;
+        synchronized (idle) {
+            for (int i = idle.size() - 1; i >= 0; i--) {
+                Session session = idle.get(i);
+                if (session.cancelled || session.stream.isPlaying()) {
+                    // Swap-remove; turn order among resumed sessions does not matter
+                    idle.set(i, idle.get(idle.size() - 1));
+                    idle.remove(idle.size() - 1);
+                    runnable.add(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives a session its turn.
+     *
+     * @param session The session.
+     */
+    private void turn(Session session) {
+        if (session.cancelled) {
+            session.complete(null);
+            return;
+        }
+        try {
+            for (int i = 0; i < session.priority; i++) {
+                if (!session.stream.step()) {
+                    session.complete(null);
+                    return;
+                }
+                if (!session.stream.isPlaying()) {
+                    synchronized (idle) {
+                        idle.add(session);
+                    }
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            session.complete(e);
+            return;
+        }
+        runnable.add(session);
+    }
+
+    private class Worker extends Thread {
+        Worker(int index) {
+            super("JAVI decode worker " + index);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    revive();
+                    Session session = runnable.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+                    if (session != null)
+                        turn(session);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A stream being decoded by a scheduler.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static class Session {
+        public final MediaStream stream;
+        private volatile int priority;
+        private volatile boolean cancelled;
+        private volatile RuntimeException failure;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Session(MediaStream stream, int priority) {
+            this.stream = stream;
+            setPriority(priority);
+        }
+
+        /**
+         * Fetches the priority of this session.
+         *
+         * @return The number of packets decoded in each turn.
+         * @since 1.0
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Sets the priority of this session. Takes effect from its next turn.
+         *
+         * @param priority The number of packets to decode in each turn.
+         * @throws IllegalArgumentException Thrown if the priority is not positive.
+         * @since 1.0
+         */
+        public void setPriority(int priority) {
+            if (priority < 1)
+                throw new IllegalArgumentException("priority must be positive");
+            this.priority = priority;
+        }
+
+        /**
+         * Takes this session off the scheduler before its next turn. The stream is left open, as it is.
+         *
+         * @since 1.0
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Checks if this session is over: its stream ended, failed, or the session was cancelled.
+         *
+         * @return True if so, false otherwise.
+         * @since 1.0
+         */
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        /**
+         * Waits for this session to be over.
+         *
+         * @throws InterruptedException Thrown if interrupted while waiting.
+         * @throws RuntimeException     The exception decoding failed with, if it did.
+         * @since 1.0
+         */
+        public void await() throws InterruptedException {
+            done.await();
+            if (failure != null)
+                throw failure;
+        }
+
+        private void complete(RuntimeException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+}
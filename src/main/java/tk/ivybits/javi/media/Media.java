@@ -20,10 +20,12 @@ package tk.ivybits.javi.media;
 
 import tk.ivybits.javi.media.stream.AudioStream;
 import tk.ivybits.javi.media.stream.MediaStream;
+import tk.ivybits.javi.media.stream.PacketStream;
 import tk.ivybits.javi.media.stream.SubtitleStream;
 import tk.ivybits.javi.media.stream.VideoStream;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -45,12 +47,40 @@ public interface Media extends Closeable {
 
     /**
      * Prepares video for streaming.
+     * <p/>
+     * Every stream created demuxes and decodes independently, so several may play the same container at once.
+     * The first stream playing plays this very container, and its decoder settings show through the streams
+     * listed here; streams playing alongside it reopen the container, and settings made on them only show
+     * through {@link MediaStream#getVideoStream()} and the like.
      *
      * @return A Builder object to configure the way the video will be streamed.
      * @since 1.0
      */
     public MediaStream.Builder stream();
 
+    /**
+     * Prepares the container for demuxing without decoding.
+     * <p/>
+     * Like the streams created by {@link #stream()}, every packet stream demuxes independently from the start of
+     * the container, and hands its demuxer back once closed.
+     *
+     * @return A Builder object to configure which packets will be demuxed, and where they go.
+     * @since 1.0
+     */
+    public PacketStream.Builder packets();
+
+    /**
+     * Indexes the keyframes of the container, so that seeks start decoding from the keyframe nearest
+     * to the requested position instead of wherever the demuxer guesses.
+     * <p/>
+     * Requires a demux pass over the entire container, unless an up-to-date index of it was saved earlier.
+     * Blocks until the index is ready.
+     *
+     * @throws IOException Thrown if the container could not be read.
+     * @since 1.0
+     */
+    public void index() throws IOException;
+
     /**
      * Fetches the length of the video.
      *
@@ -18,11 +18,17 @@
 
 package tk.ivybits.javi.media;
 
+import tk.ivybits.javi.ffmpeg.media.io.MappedSource;
+import tk.ivybits.javi.ffmpeg.media.stream.FFCachedMedia;
 import tk.ivybits.javi.ffmpeg.media.stream.FFMedia;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Collection;
 
 public final class MediaFactory {
     private MediaFactory() {
@@ -36,4 +42,68 @@ public final class MediaFactory {
     public static Media open(File file) throws IOException {
         return new FFMedia(file);
     }
+
+    public static Media open(URI uri, OpenOptions options) throws IOException {
+        return new FFMedia(uri, options);
+    }
+
+    public static Media open(File file, OpenOptions options) throws IOException {
+        return new FFMedia(file, options);
+    }
+
+    /**
+     * Opens a local file through a probe cache. If the cache holds up-to-date probe results of the file, its
+     * streams and length are known without touching the file; it is only opened once streamed.
+     *
+     * @param file  The file.
+     * @param cache The cache to look the file up in, and to save its probe results to if it is not yet cached.
+     * @return The media.
+     * @throws IOException Thrown if the file needed probing and could not be opened.
+     */
+    public static Media open(File file, ProbeCache cache) throws IOException {
+        return new FFCachedMedia(file, cache.probe(file));
+    }
+
+    /**
+     * Probes many files concurrently. Only probe results are kept; every container is closed as soon as it
+     * has been probed.
+     *
+     * @param files       The files. Must not be modified while the batch runs.
+     * @param parallelism The maximum number of files probed at once.
+     * @param timeout     The time after which a file is reported as timed out, in milliseconds, or 0 to wait forever.
+     * @return The batch, handing out results as they complete.
+     */
+    public static ProbeBatch probeAll(Collection<File> files, int parallelism, long timeout) {
+        return new ProbeBatch(files, parallelism, timeout, null);
+    }
+
+    /**
+     * Probes many files concurrently, going through a probe cache. Files with up-to-date cache entries are
+     * never opened.
+     *
+     * @param files       The files. Must not be modified while the batch runs.
+     * @param parallelism The maximum number of files probed at once.
+     * @param timeout     The time after which a file is reported as timed out, in milliseconds, or 0 to wait forever.
+     * @param cache       The cache to look files up in, and to save probe results to.
+     * @return The batch, handing out results as they complete.
+     */
+    public static ProbeBatch probeAll(Collection<File> files, int parallelism, long timeout, ProbeCache cache) {
+        return new ProbeBatch(files, parallelism, timeout, cache);
+    }
+
+    public static Media map(File file) throws IOException {
+        return new FFMedia(new MappedSource(file));
+    }
+
+    public static Media open(SeekableByteChannel channel) throws IOException {
+        return new FFMedia(channel);
+    }
+
+    public static Media open(ByteBuffer buffer) throws IOException {
+        return new FFMedia(buffer);
+    }
+
+    public static Media open(InputStream in) throws IOException {
+        return new FFMedia(in);
+    }
 }
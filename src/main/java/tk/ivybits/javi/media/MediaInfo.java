@@ -0,0 +1,160 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media;
+
+import tk.ivybits.javi.format.PixelFormat;
+import tk.ivybits.javi.format.SampleFormat;
+import tk.ivybits.javi.media.stream.AudioStream;
+import tk.ivybits.javi.media.stream.Stream;
+import tk.ivybits.javi.media.stream.SubtitleStream;
+import tk.ivybits.javi.media.stream.VideoStream;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Snapshot of what probing a local file found: its streams and their formats, and its length.
+ * <p/>
+ * Carries the path, size and modification time of the file it was taken of, so that it can be told apart from
+ * a snapshot of an older version of the same file.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class MediaInfo {
+    public final String path;
+    public final long size;
+    public final long lastModified;
+    public final long length;
+    public final List<StreamInfo> streams;
+
+    public MediaInfo(String path, long size, long lastModified, long length, List<StreamInfo> streams) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.streams = Collections.unmodifiableList(new ArrayList<StreamInfo>(streams));
+    }
+
+    /**
+     * Takes a snapshot of an open container.
+     *
+     * @param file  The file the container was opened from.
+     * @param media The container.
+     * @return The snapshot.
+     * @since 1.0
+     */
+    public static MediaInfo of(File file, Media media) {
+        ArrayList<StreamInfo> streams = new ArrayList<StreamInfo>();
+        for (VideoStream stream : media.videoStreams()) {
+            PixelFormat pixelFormat;
+            try {
+                pixelFormat = stream.pixelFormat();
+            } catch (IllegalStateException e) {
+                // Formats newer than PixelFormat knows of
+                pixelFormat = null;
+            }
+            streams.add(new StreamInfo(stream, stream.width(), stream.height(), stream.framerate(), pixelFormat, null));
+        }
+        for (AudioStream stream : media.audioStreams())
+            streams.add(new StreamInfo(stream, 0, 0, 0, null, stream.audioFormat()));
+        for (SubtitleStream stream : media.subtitleStreams())
+            streams.add(new StreamInfo(stream, 0, 0, 0, null, null));
+        return new MediaInfo(file.getAbsolutePath(), file.length(), file.lastModified(), media.length(), streams);
+    }
+
+    /**
+     * Checks if this snapshot was taken of a file as it is now.
+     *
+     * @param file The file.
+     * @return True if the path, size and modification time of the file all match, false otherwise.
+     * @since 1.0
+     */
+    public boolean matches(File file) {
+        return path.equals(file.getAbsolutePath()) && size == file.length() && lastModified == file.lastModified();
+    }
+
+    /**
+     * Fetches the streams of a certain type.
+     *
+     * @param type The type.
+     * @return The streams, in the order they were probed in.
+     * @since 1.0
+     */
+    public List<StreamInfo> streams(Stream.Type type) {
+        ArrayList<StreamInfo> matching = new ArrayList<StreamInfo>();
+        for (StreamInfo stream : streams) {
+            if (stream.type == type)
+                matching.add(stream);
+        }
+        return matching;
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + length + "ms, " + streams.size() + " streams)";
+    }
+
+    /**
+     * Snapshot of a single stream. Fields not applicable to the type of the stream are zero or null.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static class StreamInfo {
+        public final int index;
+        public final Stream.Type type;
+        public final String codecName;
+        public final String longCodecName;
+        public final Locale language;
+        public final int width;
+        public final int height;
+        public final double framerate;
+        public final PixelFormat pixelFormat;
+        public final SampleFormat audioFormat;
+
+        public StreamInfo(int index, Stream.Type type, String codecName, String longCodecName, Locale language,
+                          int width, int height, double framerate, PixelFormat pixelFormat, SampleFormat audioFormat) {
+            this.index = index;
+            this.type = type;
+            this.codecName = codecName;
+            this.longCodecName = longCodecName;
+            this.language = language;
+            this.width = width;
+            this.height = height;
+            this.framerate = framerate;
+            this.pixelFormat = pixelFormat;
+            this.audioFormat = audioFormat;
+        }
+
+        private StreamInfo(Stream stream, int width, int height, double framerate, PixelFormat pixelFormat,
+                           SampleFormat audioFormat) {
+            this(stream.index(), stream.type(), stream.codecName(), stream.longCodecName(), stream.language(),
+                    width, height, framerate, pixelFormat, audioFormat);
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + type + " " + codecName;
+        }
+    }
+}
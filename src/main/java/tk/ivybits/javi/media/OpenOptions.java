@@ -0,0 +1,205 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.media;
+
+/**
+ * Options controlling how a container is opened and probed.
+ * <p/>
+ * Probing reads ahead into the container to identify its format and streams. The defaults are generous, to cope
+ * with unusual files; for inputs known to be well-formed, smaller budgets make opening considerably faster.
+ * </p>
+ * Cannot be instantiated directly: use {@link OpenOptions.Builder}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class OpenOptions {
+    /**
+     * Options leaving everything at FFmpeg's defaults.
+     */
+    public static final OpenOptions DEFAULT = new Builder().create();
+    public final int probeSize;
+    public final long analyzeDuration;
+    public final int fpsProbeSize;
+    public final String format;
+    public final int skipInitialBytes;
+    public final long openTimeout;
+    public final long readTimeout;
+    public final boolean cancellable;
+
+    private OpenOptions(Builder builder) {
+        this.probeSize = builder.probeSize;
+        this.analyzeDuration = builder.analyzeDuration;
+        this.fpsProbeSize = builder.fpsProbeSize;
+        this.format = builder.format;
+        this.skipInitialBytes = builder.skipInitialBytes;
+        this.openTimeout = builder.openTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.cancellable = builder.cancellable;
+    }
+
+    /**
+     * Builder for OpenOptions. Options not specified are left at FFmpeg's defaults.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static class Builder {
+        public int probeSize = -1;
+        public long analyzeDuration = -1;
+        public int fpsProbeSize = -1;
+        public String format;
+        public int skipInitialBytes;
+        public long openTimeout;
+        public long readTimeout;
+        public boolean cancellable;
+
+        /**
+         * Specifies how much of the container may be read to identify its format and streams.
+         *
+         * @param probeSize The number of bytes, at least 32.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the size is too small.
+         * @since 1.0
+         */
+        public Builder probeSize(int probeSize) {
+            if (probeSize < 32)
+                throw new IllegalArgumentException("probe size must be at least 32 bytes");
+            this.probeSize = probeSize;
+            return this;
+        }
+
+        /**
+         * Specifies how much of the media may be analyzed to find the parameters of its streams.
+         *
+         * @param analyzeDuration The duration, in milliseconds.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the duration is negative.
+         * @since 1.0
+         */
+        public Builder analyzeDuration(long analyzeDuration) {
+            if (analyzeDuration < 0)
+                throw new IllegalArgumentException("negative analyze duration");
+            this.analyzeDuration = analyzeDuration;
+            return this;
+        }
+
+        /**
+         * Specifies how many frames may be read to estimate the frame rate of video streams.
+         *
+         * @param fpsProbeSize The number of frames.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the number is negative.
+         * @since 1.0
+         */
+        public Builder fpsProbeSize(int fpsProbeSize) {
+            if (fpsProbeSize < 0)
+                throw new IllegalArgumentException("negative fps probe size");
+            this.fpsProbeSize = fpsProbeSize;
+            return this;
+        }
+
+        /**
+         * Specifies the format of the container, skipping format detection.
+         *
+         * @param format The short name of the format, as known to FFmpeg (e.g. "matroska", "mp4", "mpegts"),
+         *               or null to detect it.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        public Builder format(String format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Specifies a number of bytes at the start of the input to ignore, such as a header of a wrapping format.
+         *
+         * @param skipInitialBytes The number of bytes.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the number is negative.
+         * @since 1.0
+         */
+        public Builder skipInitialBytes(int skipInitialBytes) {
+            if (skipInitialBytes < 0)
+                throw new IllegalArgumentException("negative skip");
+            this.skipInitialBytes = skipInitialBytes;
+            return this;
+        }
+
+        /**
+         * Specifies how long opening and probing the container may take before being aborted.
+         *
+         * @param openTimeout The time, in milliseconds, or 0 for no limit.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the time is negative.
+         * @since 1.0
+         */
+        public Builder openTimeout(long openTimeout) {
+            if (openTimeout < 0)
+                throw new IllegalArgumentException("negative open timeout");
+            this.openTimeout = openTimeout;
+            return this;
+        }
+
+        /**
+         * Specifies how long reading a single packet may take before being aborted, such as when the storage
+         * the container is on stops responding.
+         *
+         * @param readTimeout The time, in milliseconds, or 0 for no limit.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the time is negative.
+         * @since 1.0
+         */
+        public Builder readTimeout(long readTimeout) {
+            if (readTimeout < 0)
+                throw new IllegalArgumentException("negative read timeout");
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Specifies whether reads in progress may be aborted by {@link tk.ivybits.javi.media.stream.MediaStream#cancel()}
+         * and {@link tk.ivybits.javi.media.stream.MediaStream#close()}.
+         * <p/>
+         * Aborting reads takes FFmpeg calling back into Java on every block it reads, which costs a few small objects
+         * each time. Media opened with neither this nor a timeout is read without any such calls, and its reads
+         * always run to completion.
+         *
+         * @param cancellable True to allow aborting reads. Defaults to false.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        public Builder cancellable(boolean cancellable) {
+            this.cancellable = cancellable;
+            return this;
+        }
+
+        /**
+         * Finalizes the options.
+         *
+         * @return The built OpenOptions.
+         * @since 1.0
+         */
+        public OpenOptions create() {
+            return new OpenOptions(this);
+        }
+    }
+}
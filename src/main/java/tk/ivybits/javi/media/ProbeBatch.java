@@ -0,0 +1,291 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch of files probed concurrently on a bounded number of threads.
+ * <p/>
+ * Results are handed out as they complete, in no particular order. Every file yields exactly one result; no
+ * container is left open once its result is out, whether probing succeeded, failed or timed out.
+ * </p>
+ * Cannot be instantiated directly: use {@link MediaFactory#probeAll(java.util.Collection, int, long)}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ProbeBatch implements Closeable {
+    private final Iterator<File> files;
+    private final int total;
+    private final long timeout;
+    private final ProbeCache cache;
+    private final OpenOptions options;
+    private final BlockingQueue<Result> results = new LinkedBlockingQueue<Result>();
+    private final Prober[] probers;
+    private final Thread watchdog;
+    private int delivered;
+    private volatile boolean closed;
+
+    ProbeBatch(Collection<File> files, int parallelism, long timeout, ProbeCache cache) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        if (timeout < 0)
+            throw new IllegalArgumentException("negative timeout");
+        this.files = files.iterator();
+        this.total = files.size();
+        this.timeout = timeout;
+        this.cache = cache;
+        options = timeout > 0 ? new OpenOptions.Builder().openTimeout(timeout).create() : OpenOptions.DEFAULT;
+        probers = new Prober[Math.min(parallelism, Math.max(total, 1))];
+        for (int i = 0; i != probers.length; i++) {
+            probers[i] = new Prober();
+            probers[i].start();
+        }
+        if (timeout > 0) {
+            watchdog = new Watchdog();
+            watchdog.start();
+        } else {
+            watchdog = null;
+        }
+    }
+
+    /**
+     * Fetches the file to probe next.
+     *
+     * @return The file, or null if none are left.
+     */
+    private synchronized File nextFile() {
+        return !closed && files.hasNext() ? files.next() : null;
+    }
+
+    /**
+     * Waits for the next result.
+     *
+     * @return The result, or null once every file has been accounted for or the batch was closed.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     * @since 1.0
+     */
+    public Result next() throws InterruptedException {
+        while (!closed && delivered != total) {
+            Result result = results.poll(100, TimeUnit.MILLISECONDS);
+            if (result != null) {
+                delivered++;
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetches the number of files in this batch.
+     *
+     * @return The number of files.
+     * @since 1.0
+     */
+    public int size() {
+        return total;
+    }
+
+    /**
+     * Stops probing. Files being probed are finished and closed in the background; the rest are never opened.
+     *
+     * @since 1.0
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (watchdog != null)
+            watchdog.interrupt();
+    }
+
+    /**
+     * Probes a file, closing whatever was opened.
+     *
+     * @param file The file.
+     * @return The result.
+     */
+    private Result probe(File file) {
+        try {
+            MediaInfo info = cache != null ? cache.get(file) : null;
+            if (info == null) {
+                Media media = MediaFactory.open(file, options);
+                try {
+                    info = MediaInfo.of(file, media);
+                } finally {
+                    media.close();
+                }
+                if (cache != null) {
+                    try {
+                        cache.put(info);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            return new Result(file, info, null);
+        } catch (IOException e) {
+            return new Result(file, null, e);
+        } catch (RuntimeException e) {
+            // Unsupported codecs and the like; one bad file must not take down the batch
+            return new Result(file, null, new IOException(e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Thread probing files one after another.
+     */
+    private class Prober extends Thread {
+        private File current;
+        private long started;
+        private boolean abandoned;
+
+        Prober() {
+            super("JAVI prober");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            File file;
+            while ((file = nextFile()) != null) {
+                synchronized (this) {
+                    current = file;
+                    started = System.nanoTime();
+                }
+                Result result = probe(file);
+                synchronized (this) {
+                    // The watchdog already reported the file as timed out, and handed our place to another thread
+                    if (abandoned)
+                        return;
+                    current = null;
+                    results.add(result);
+                }
+            }
+        }
+
+        /**
+         * Gives up on the file being probed, if it has taken longer than the timeout.
+         *
+         * @param now The current time, in nanoseconds.
+         * @return True if the file was given up on, now or before, false otherwise.
+         */
+        synchronized boolean expire(long now) {
+            if (abandoned)
+                return true;
+            if (current == null || now - started < TimeUnit.MILLISECONDS.toNanos(timeout))
+                return false;
+            abandoned = true;
+            results.add(new Result(current, null, new InterruptedIOException("probe timed out after " + timeout + "ms")));
+            return true;
+        }
+    }
+
+    /**
+     * Thread reporting files that take too long to probe, and replacing the threads stuck on them.
+     * <p/>
+     * Opening is aborted by FFmpeg itself once the timeout passes, but only when it next checks for interruption;
+     * a thread stuck in a call that never does closes its container and exits on its own once the call returns.
+     * Such threads cannot be stopped, so at most as many are replaced as the batch probes in parallel; past that,
+     * a stuck thread keeps its place until it returns, and the batch slows down rather than piling up threads.
+     */
+    private class Watchdog extends Thread {
+        // Abandoned probers still running, having been replaced
+        private final ArrayList<Prober> stuck = new ArrayList<Prober>();
+
+        Watchdog() {
+            super("JAVI probe watchdog");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long interval = Math.max(1, Math.min(timeout / 4, 100));
+            try {
+                while (!closed) {
+                    boolean alive = false;
+                    long now = System.nanoTime();
+                    for (Iterator<Prober> it = stuck.iterator(); it.hasNext(); ) {
+                        if (!it.next().isAlive())
+                            it.remove();
+                    }
+                    for (int i = 0; i != probers.length; i++) {
+                        Prober prober = probers[i];
+                        // Probers that returned since being abandoned are gone, and need replacing all the same
+                        if (prober.expire(now) && (!prober.isAlive() || stuck.size() < probers.length)) {
+                            if (prober.isAlive())
+                                stuck.add(prober);
+                            probers[i] = new Prober();
+                            probers[i].start();
+                        }
+                        alive |= probers[i].isAlive();
+                    }
+                    if (!alive)
+                        return;
+                    Thread.sleep(interval);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Outcome of probing a single file.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static class Result {
+        public final File file;
+        public final MediaInfo info;
+        public final IOException error;
+
+        Result(File file, MediaInfo info, IOException error) {
+            this.file = file;
+            this.info = info;
+            this.error = error;
+        }
+
+        /**
+         * Fetches the probe results.
+         *
+         * @return The probe results.
+         * @throws IOException Thrown if probing failed. Timeouts are reported as {@link InterruptedIOException}s.
+         * @since 1.0
+         */
+        public MediaInfo get() throws IOException {
+            if (error != null)
+                throw error;
+            return info;
+        }
+
+        @Override
+        public String toString() {
+            return file + ": " + (error != null ? error.getMessage() : info);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media;
+
+import tk.ivybits.javi.format.PixelFormat;
+import tk.ivybits.javi.format.SampleFormat;
+import tk.ivybits.javi.media.stream.Stream;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * On-disk cache of probe results, so that the streams and length of a file can be known without opening it.
+ * <p/>
+ * Each file gets a small entry keyed by its path, size and modification time; an entry for an older version of
+ * a file is ignored, and replaced the next time the file is probed.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ProbeCache {
+    /**
+     * Cache kept in the temporary directory.
+     */
+    public static final ProbeCache DEFAULT = new ProbeCache(new File(System.getProperty("java.io.tmpdir"), "javi-probe"));
+    private static final int MAGIC = 0x4A505243; // "JPRC"
+    private static final int VERSION = 1;
+    private final File directory;
+
+    /**
+     * Creates a cache kept in a directory. The directory is created when the first entry is saved.
+     *
+     * @param directory The directory.
+     * @since 1.0
+     */
+    public ProbeCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Fetches the probe results of a file, probing it if no up-to-date entry exists.
+     * <p/>
+     * Failure to save the entry is not fatal; the file will just be probed again next time.
+     *
+     * @param file The file.
+     * @return The probe results.
+     * @throws IOException Thrown if the file could not be opened.
+     * @since 1.0
+     */
+    public MediaInfo probe(File file) throws IOException {
+        MediaInfo info = get(file);
+        if (info == null) {
+            Media media = MediaFactory.open(file);
+            try {
+                info = MediaInfo.of(file, media);
+            } finally {
+                media.close();
+            }
+            try {
+                put(info);
+            } catch (IOException ignored) {
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Fetches the cached probe results of a file. Never touches the file beyond checking its size and
+     * modification time.
+     *
+     * @param file The file.
+     * @return The probe results, or null if the entry is missing, unreadable or does not match the file as it is now.
+     * @since 1.0
+     */
+    public MediaInfo get(File file) {
+        File entry = entry(file);
+        if (!entry.isFile())
+            return null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            String path = in.readUTF();
+            long size = in.readLong(), lastModified = in.readLong();
+            if (!path.equals(file.getAbsolutePath()) || size != file.length() || lastModified != file.lastModified())
+                return null;
+            long length = in.readLong();
+
+            int count = in.readInt();
+            ArrayList<MediaInfo.StreamInfo> streams = new ArrayList<MediaInfo.StreamInfo>(count);
+            for (int i = 0; i != count; i++) {
+                int index = in.readInt();
+                Stream.Type type = Stream.Type.valueOf(in.readUTF());
+                String codecName = in.readUTF(), longCodecName = in.readUTF(), language = in.readUTF();
+                int width = in.readInt(), height = in.readInt();
+                double framerate = in.readDouble();
+                String pixelFormat = in.readUTF();
+                SampleFormat audioFormat = null;
+                if (in.readBoolean()) {
+                    audioFormat = new SampleFormat(SampleFormat.Encoding.valueOf(in.readUTF()),
+                            SampleFormat.ChannelLayout.valueOf(in.readUTF()), in.readInt(), in.readInt());
+                }
+                streams.add(new MediaInfo.StreamInfo(index, type, codecName, longCodecName,
+                        language.isEmpty() ? null : new Locale(language), width, height, framerate,
+                        pixelFormat.isEmpty() ? null : PixelFormat.valueOf(pixelFormat), audioFormat));
+            }
+            return new MediaInfo(path, size, lastModified, length, streams);
+        } catch (IOException e) {
+            // A truncated or corrupt entry is as good as none
+            return null;
+        } catch (IllegalArgumentException e) {
+            // Written by a version that knew of formats this one does not
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the probe results of a file, replacing any earlier entry of it.
+     *
+     * @param info The probe results.
+     * @throws IOException Thrown if the entry could not be written.
+     * @since 1.0
+     */
+    public void put(MediaInfo info) throws IOException {
+        File entry = entry(new File(info.path));
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("could not create cache directory: " + directory);
+        // Written aside and renamed into place, so that concurrent readers never see a partial entry
+        File temp = File.createTempFile(entry.getName(), ".tmp", directory);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(info.path);
+            out.writeLong(info.size);
+            out.writeLong(info.lastModified);
+            out.writeLong(info.length);
+            out.writeInt(info.streams.size());
+            for (MediaInfo.StreamInfo stream : info.streams) {
+                out.writeInt(stream.index);
+                out.writeUTF(stream.type.name());
+                out.writeUTF(stream.codecName);
+                out.writeUTF(stream.longCodecName != null ? stream.longCodecName : "");
+                out.writeUTF(stream.language != null ? stream.language.getLanguage() : "");
+                out.writeInt(stream.width);
+                out.writeInt(stream.height);
+                out.writeDouble(stream.framerate);
+                out.writeUTF(stream.pixelFormat != null ? stream.pixelFormat.name() : "");
+                out.writeBoolean(stream.audioFormat != null);
+                if (stream.audioFormat != null) {
+                    out.writeUTF(stream.audioFormat.encoding().name());
+                    out.writeUTF(stream.audioFormat.channelLayout().name());
+                    out.writeInt(stream.audioFormat.frequency());
+                    out.writeInt(stream.audioFormat.channels());
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(entry)) {
+            entry.delete();
+            if (!temp.renameTo(entry)) {
+                temp.delete();
+                throw new IOException("could not write cache entry: " + entry);
+            }
+        }
+    }
+
+    private File entry(File file) {
+        String path = file.getAbsolutePath();
+        return new File(directory, file.getName() + "-" + Integer.toHexString(path.hashCode()) + ".probe");
+    }
+}
@@ -0,0 +1,37 @@
+package tk.ivybits.javi.media.handler;
+
+import tk.ivybits.javi.media.stream.Packet;
+
+public abstract class PacketHandler {
+    public static final PacketHandler NO_HANDLER = new PacketHandler() {
+        @Override
+        public void handle(Packet packet) {
+        }
+    };
+
+    /**
+     * Handles a packet.
+     *
+     * @param packet The packet to handle. Its data is only valid until this method returns.
+     * @since 1.0
+     */
+    public abstract void handle(Packet packet);
+
+    /**
+     * Signifies the start of a stream.
+     *
+     * @since 1.0
+     */
+    public void start() {
+
+    }
+
+    /**
+     * Signifies the end of a stream.
+     *
+     * @since 1.0
+     */
+    public void end() {
+
+    }
+}
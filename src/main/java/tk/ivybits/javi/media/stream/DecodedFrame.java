@@ -0,0 +1,162 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media.stream;
+
+import tk.ivybits.javi.media.subtitle.Subtitle;
+
+/**
+ * A unit of decoded media, as returned by {@link MediaStream#nextFrame()}.
+ * <p/>
+ * Holds either a {@link Frame} of audio or video, or a {@link Subtitle}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DecodedFrame {
+    private Stream stream;
+    private Frame frame;
+    private final Subtitle subtitle;
+    private long duration;
+    private final long start, end;
+
+    /**
+     * Creates an audio or video DecodedFrame.
+     *
+     * @param stream   The stream the frame was decoded from.
+     * @param frame    The frame.
+     * @param duration The duration of the frame in nanoseconds, or 0 if unknown.
+     * @since 1.0
+     */
+    public DecodedFrame(Stream stream, Frame frame, long duration) {
+        this.stream = stream;
+        this.frame = frame;
+        this.subtitle = null;
+        this.duration = duration;
+        this.start = this.end = 0;
+    }
+
+    /**
+     * Creates a subtitle DecodedFrame.
+     *
+     * @param stream   The stream the subtitle was decoded from.
+     * @param subtitle The subtitle.
+     * @param start    The time the subtitle is shown at, in milliseconds.
+     * @param end      The time the subtitle is hidden at, in milliseconds.
+     * @since 1.0
+     */
+    public DecodedFrame(Stream stream, Subtitle subtitle, long start, long end) {
+        this.stream = stream;
+        this.frame = null;
+        this.subtitle = subtitle;
+        this.duration = 0;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Re-points this at another decoded audio or video frame, so it may be handed out again.
+     * <p/>
+     * Intended for stream implementations that recycle frames, and should not be called by users.
+     *
+     * @param stream   The stream the frame was decoded from.
+     * @param frame    The frame.
+     * @param duration The duration of the frame in nanoseconds, or 0 if unknown.
+     * @return This DecodedFrame.
+     * @throws IllegalStateException Thrown if this holds a subtitle.
+     * @since 1.0
+     */
+    public DecodedFrame reset(Stream stream, Frame frame, long duration) {
+        if (subtitle != null)
+            throw new IllegalStateException("subtitle frames cannot be recycled");
+        this.stream = stream;
+        this.frame = frame;
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Fetches the stream this was decoded from.
+     *
+     * @return Said stream.
+     * @since 1.0
+     */
+    public Stream stream() {
+        return stream;
+    }
+
+    /**
+     * Fetches the type of the stream this was decoded from.
+     *
+     * @return STREAM_AUDIO, STREAM_VIDEO or STREAM_SUBTITLE.
+     * @since 1.0
+     */
+    public Stream.Type type() {
+        return stream.type();
+    }
+
+    /**
+     * Fetches the decoded audio or video frame.
+     *
+     * @return The frame, or null if this is a subtitle.
+     * @since 1.0
+     */
+    public Frame frame() {
+        return frame;
+    }
+
+    /**
+     * Fetches the decoded subtitle.
+     *
+     * @return The subtitle, or null if this is an audio or video frame.
+     * @since 1.0
+     */
+    public Subtitle subtitle() {
+        return subtitle;
+    }
+
+    /**
+     * Fetches the duration of a video frame, as would be passed to a {@link tk.ivybits.javi.media.handler.FrameHandler}.
+     *
+     * @return The duration, in nanoseconds.
+     * @since 1.0
+     */
+    public long duration() {
+        return duration;
+    }
+
+    /**
+     * Fetches the time a subtitle is to be shown at.
+     *
+     * @return The time, in milliseconds.
+     * @since 1.0
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Fetches the time a subtitle is to be hidden at.
+     *
+     * @return The time, in milliseconds.
+     * @since 1.0
+     */
+    public long end() {
+        return end;
+    }
+}
@@ -29,8 +29,8 @@ import java.util.Iterator;
  */
 public class Frame implements Iterable<Frame.Plane> {
     public static class Plane {
-        private final ByteBuffer buffer;
-        private final int linesize;
+        private ByteBuffer buffer;
+        private int linesize;
 
         public Plane(ByteBuffer buffer, int linesize) {
             this.buffer = buffer;
@@ -44,10 +44,27 @@ public class Frame implements Iterable<Frame.Plane> {
         public int linesize() {
             return linesize;
         }
+
+        /**
+         * Re-points this plane at other data.
+         * <p/>
+         * Intended for stream implementations that recycle frames, and should not be called from handlers.
+         *
+         * @param buffer   The plane data.
+         * @param linesize The size of a line of the plane, in bytes.
+         * @return This plane.
+         * @since 1.0
+         */
+        public Plane set(ByteBuffer buffer, int linesize) {
+            this.buffer = buffer;
+            this.linesize = linesize;
+            return this;
+        }
     }
 
-    private final Plane[] planes;
-    private final int samples;
+    private Plane[] planes;
+    private int count;
+    private int samples;
 
     public Frame(Plane[] planes) {
         this(planes, 1);
@@ -55,23 +72,95 @@ public class Frame implements Iterable<Frame.Plane> {
 
     public Frame(Plane[] planes, int samples) {
         this.planes = planes;
+        this.count = planes.length;
         this.samples = samples;
     }
 
+    /**
+     * Creates a frame with empty planes, to be filled in with {@link Plane#set(ByteBuffer, int)}.
+     *
+     * @param planes  The number of planes.
+     * @param samples The number of samples.
+     * @since 1.0
+     */
+    public Frame(int planes, int samples) {
+        this(new Plane[0], samples);
+        reset(planes, samples);
+    }
+
     public Plane plane(int p) {
+        if (p >= count)
+            throw new IndexOutOfBoundsException("plane " + p + " of " + count);
         return planes[p];
     }
 
     public int planes() {
-        return planes.length;
+        return count;
     }
 
     public int samples() {
         return samples;
     }
 
+    /**
+     * Resizes this frame, so it may be reused for another decoded frame.
+     * <p/>
+     * Planes are only allocated when the frame grows beyond any size it previously had; existing planes keep
+     * their data until re-pointed with {@link Plane#set(ByteBuffer, int)}.
+     * Intended for stream implementations that recycle frames, and should not be called from handlers.
+     *
+     * @param planes  The number of planes.
+     * @param samples The number of samples.
+     * @return This frame.
+     * @since 1.0
+     */
+    public Frame reset(int planes, int samples) {
+        if (planes > this.planes.length) {
+            Plane[] grown = Arrays.copyOf(this.planes, planes);
+            for (int p = this.planes.length; p != planes; p++)
+                grown[p] = new Plane(null, 0);
+            this.planes = grown;
+        }
+        this.count = planes;
+        this.samples = samples;
+        return this;
+    }
+
+    /**
+     * Takes out a reference to the data of this frame.
+     * <p/>
+     * Frames passed to handlers are only valid until the handler returns. A retained frame stays valid, and may be
+     * used from any thread, until it is {@link #release() released}. Frames decoded into reference-counted memory
+     * share it with the frames retained from them; all others are copied.
+     *
+     * @return A frame holding the new reference.
+     * @since 1.0
+     */
+    public Frame retain() {
+        Plane[] copy = new Plane[count];
+        for (int p = 0; p != count; p++) {
+            ByteBuffer data = planes[p].buffer.duplicate();
+            data.clear();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(data.remaining());
+            buffer.put(data).flip();
+            copy[p] = new Plane(buffer, planes[p].linesize);
+        }
+        return new Frame(copy, samples);
+    }
+
+    /**
+     * Gives up a reference taken with {@link #retain()}. The frame must not be used afterwards.
+     * <p/>
+     * Releasing a frame more than once, or one that was passed to a handler rather than retained, has no effect:
+     * frames passed to handlers belong to the stream, which takes them back once the handler returns.
+     *
+     * @since 1.0
+     */
+    public void release() {
+    }
+
     @Override
     public Iterator<Plane> iterator() {
-        return Collections.unmodifiableList(Arrays.asList(planes)).iterator();
+        return Collections.unmodifiableList(Arrays.asList(planes).subList(0, count)).iterator();
     }
 }
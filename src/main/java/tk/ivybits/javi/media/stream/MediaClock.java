@@ -0,0 +1,189 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.media.stream;
+
+/**
+ * Clock of a {@link MediaStream}, derived from the presentation timestamps of the frames it delivers.
+ * <p/>
+ * Keeps the position of every stream type separately, and reports the time of whichever one is selected as
+ * master. An external clock, running in real time from the position last synced to, is kept as well; it stands in
+ * for a master that has not delivered anything yet.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class MediaClock {
+    private volatile Master master = Master.AUDIO;
+    private volatile long audio = -1, video = -1;
+    // Position of the external clock when last synced, and when that was in nano time
+    private volatile long externalPosition, externalSynced = System.nanoTime();
+    private volatile boolean running;
+
+    /**
+     * Fetches the clock used as time reference.
+     *
+     * @return The master clock. Defaults to {@link Master#AUDIO}.
+     * @since 1.0
+     */
+    public Master master() {
+        return master;
+    }
+
+    /**
+     * Sets the clock used as time reference.
+     *
+     * @param master The master clock.
+     * @since 1.0
+     */
+    public void master(Master master) {
+        if (master == null)
+            throw new IllegalArgumentException("null master");
+        this.master = master;
+    }
+
+    /**
+     * Fetches the clock time is currently taken from: the master, unless it has no position yet.
+     * An audio master falls back to video, and either falls back to the external clock.
+     *
+     * @return The effective master clock.
+     * @since 1.0
+     */
+    public Master source() {
+        Master master = this.master;
+        if (master == Master.AUDIO && audio >= 0)
+            return Master.AUDIO;
+        if (master != Master.EXTERNAL && video >= 0)
+            return Master.VIDEO;
+        return Master.EXTERNAL;
+    }
+
+    /**
+     * Fetches the current time of the media.
+     *
+     * @return The time of the effective master clock, in milliseconds.
+     * @since 1.0
+     */
+    public long time() {
+        switch (source()) {
+            case AUDIO:
+                return audio;
+            case VIDEO:
+                return video;
+            default:
+                return external();
+        }
+    }
+
+    /**
+     * Fetches the position of a stream type.
+     *
+     * @param type The stream type.
+     * @return The presentation time of the last frame of that type delivered, in milliseconds,
+     *         or -1 if none was delivered since the clock was last reset.
+     * @since 1.0
+     */
+    public long position(Stream.Type type) {
+        switch (type) {
+            case STREAM_AUDIO:
+                return audio;
+            case STREAM_VIDEO:
+                return video;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Fetches the time of the external clock.
+     *
+     * @return The position last synced to, advanced by the real time elapsed since while running, in milliseconds.
+     * @since 1.0
+     */
+    public long external() {
+        long position = externalPosition;
+        if (running)
+            position += (System.nanoTime() - externalSynced) / 1000000;
+        return position;
+    }
+
+    /**
+     * Sets the external clock to a position.
+     *
+     * @param position The position, in milliseconds.
+     * @since 1.0
+     */
+    public void sync(long position) {
+        externalSynced = System.nanoTime();
+        externalPosition = position;
+    }
+
+    /**
+     * Records the delivery of a frame.
+     *
+     * @param type     The type of stream the frame belongs to.
+     * @param position The presentation time of the frame, in milliseconds.
+     * @since 1.0
+     */
+    public void update(Stream.Type type, long position) {
+        switch (type) {
+            case STREAM_AUDIO:
+                audio = position;
+                break;
+            case STREAM_VIDEO:
+                video = position;
+                break;
+        }
+    }
+
+    /**
+     * Forgets the position of every stream, and sets the external clock to a position. Done on seek.
+     *
+     * @param position The position, in milliseconds.
+     * @since 1.0
+     */
+    public void reset(long position) {
+        audio = video = -1;
+        sync(position);
+    }
+
+    /**
+     * Starts or stops the external clock.
+     *
+     * @param running If true, the external clock advances in real time. Otherwise, it stands still.
+     * @since 1.0
+     */
+    public void setRunning(boolean running) {
+        if (running == this.running)
+            return;
+        // Fold the time run so far into the position, so stopping does not lose it nor starting count the pause
+        sync(external());
+        this.running = running;
+    }
+
+    /**
+     * Enum for the clocks that may serve as master.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static enum Master {
+        AUDIO, VIDEO, EXTERNAL
+    }
+}
@@ -90,6 +90,46 @@ public interface MediaStream extends Runnable, Closeable {
      */
     SubtitleStream getSubtitleStream();
 
+    /**
+     * Fetches the kind of multithreading the decoder of a selected stream settled on.
+     *
+     * @param stream The stream to query; must be the current audio, video or subtitle stream.
+     * @return The active thread type, or null if the decoder is running single-threaded.
+     * @throws IllegalArgumentException Thrown if the stream is not currently selected.
+     * @since 1.0
+     */
+    ThreadType activeThreadType(Stream stream);
+
+    /**
+     * Decodes the next frame of any selected stream, on the calling thread.
+     * <p/>
+     * An alternative to {@link #run()}: packets are only read and decoded when a frame is asked for, so the
+     * caller controls the pace, and may stop at any time by closing the stream. Handlers are not called.
+     * The returned frame, including its planes, is only valid until the next call to this method.
+     *
+     * @return The next frame, or null if the end of the media has been reached.
+     * @throws IllegalStateException Thrown if the stream was already started with {@link #run()}.
+     * @throws StreamException       Thrown if decoding failed.
+     * @since 1.0
+     */
+    DecodedFrame nextFrame();
+
+    /**
+     * Reads and decodes a single packet on the calling thread, passing whatever it holds on to the handlers.
+     * <p/>
+     * An alternative to {@link #run()} for callers multiplexing many streams over few threads, such as a
+     * {@link tk.ivybits.javi.media.DecodeScheduler}. Returns immediately without decoding anything while the stream
+     * is paused. Handlers are notified of the stream end by the call that reaches it.
+     *
+     * @return True if there is more to decode, false once the end of the media was reached or the stream was closed.
+     * @throws IllegalStateException         Thrown if the stream was already started with {@link #run()} or
+     *                                       {@link #nextFrame()}.
+     * @throws UnsupportedOperationException Thrown if the stream decodes on threads of its own.
+     * @throws StreamException               Thrown if decoding failed.
+     * @since 1.0
+     */
+    boolean step();
+
     /**
      * Checks if the stream is playing.
      *
@@ -109,25 +149,101 @@ public interface MediaStream extends Runnable, Closeable {
 
     /**
      * Sets the current position of the stream, in milliseconds.
+     * <p/>
+     * The seek is carried out asynchronously by the decoding thread, before it decodes its next packet. The
+     * decoders are flushed, and decoding restarts from the keyframe preceding the position, which is located
+     * exactly if the container was {@link tk.ivybits.javi.media.Media#index() indexed}. Frames between that
+     * keyframe and the position are decoded, but not passed on to the handlers. If the container cannot be
+     * seeked, playback carries on from where it was.
      *
      * @param to The position to seek to.
      * @throws IllegalArgumentException Thrown if the seek position is invalid.
-     * @throws StreamException          Thrown if the seek failed or if called when called on a stream that is not started.
+     * @throws IllegalStateException    Thrown if called on a stream that is not started.
      * @since 1.0
      */
     void seek(long to);
 
+    /**
+     * Fetches how long the last seek took, from the call to {@link #seek(long)} until the first frame at
+     * the new position was passed to a handler.
+     *
+     * @return The latency in nanoseconds, or -1 if no seek has completed yet, or the last one failed.
+     * @since 1.0
+     */
+    long seekLatency();
+
     /**
      * Fetches the current time of the media, in milliseconds.
      *
-     * @return The current time.
+     * @return The current time, as reported by the {@link #clock() master clock}.
      * @since 1.0
      */
     long position();
 
+    /**
+     * Fetches the clock of this stream, which tracks the presentation time of delivered frames.
+     * <p/>
+     * When a handler is invoked, the clock position of its stream type already reflects the frame passed to it.
+     *
+     * @return The clock.
+     * @since 1.0
+     */
+    MediaClock clock();
+
+    /**
+     * Stops the stream, aborting any read in progress instead of waiting for it to complete, such as when the
+     * storage the media is on stops responding. The decoding thread winds down as if the end of the media had
+     * been reached.
+     * <p/>
+     * Only reads of media opened {@link tk.ivybits.javi.media.OpenOptions.Builder#cancellable(boolean) cancellable}
+     * or with a timeout can be aborted; reads of other media are waited for.
+     * <p/>
+     * Media read from custom sources is demuxed once for all of its streams, and cannot be read from again
+     * once any of them was cancelled, until all of them are closed. Streams created after that play it from the
+     * start, like any other.
+     *
+     * @since 1.0
+     */
+    void cancel();
+
+    /**
+     * Stops the stream and frees everything it holds, waiting for the threads decoding it to be done first.
+     * <p/>
+     * Called from a handler, returns right away instead; the stream is then freed once decoding has unwound.
+     *
+     * @since 1.0
+     */
     @Override
     void close();
 
+    /**
+     * Kinds of multithreading a decoder may use.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static enum ThreadType {
+        /**
+         * Decodes several frames at once. Adds one frame of latency per thread; the frames in flight at the end of
+         * the media are still delivered.
+         */
+        FRAME(1),
+        /**
+         * Decodes slices of a single frame at once. Only effective on streams encoded with multiple slices.
+         */
+        SLICE(2),
+        /**
+         * Lets the decoder pick whichever of the above it supports best.
+         */
+        ANY(3);
+
+        public final int id;
+
+        ThreadType(int id) {
+            this.id = id;
+        }
+    }
+
     /**
      * Builder for generating valid {@link MediaStream} objects.
      *
@@ -170,6 +286,120 @@ public interface MediaStream extends Runnable, Closeable {
          */
         Builder subtitle(SubtitleHandler subtitleHandler);
 
+        /**
+         * Decodes every selected stream on a dedicated thread, fed by a separate demuxer thread.
+         * <p/>
+         * Packets are buffered in bounded per-stream queues, so that a slow frame in one stream does not stall
+         * delivery of the others. The demuxer blocks once the queue of the stream it is reading is full.
+         *
+         * @param videoQueueDepth    The maximum number of video packets buffered ahead of the video decoder.
+         * @param audioQueueDepth    The maximum number of audio packets buffered ahead of the audio decoder.
+         * @param subtitleQueueDepth The maximum number of subtitle packets buffered ahead of the subtitle decoder.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if any queue depth is not positive.
+         * @since 1.0
+         */
+        Builder pipelined(int videoQueueDepth, int audioQueueDepth, int subtitleQueueDepth);
+
+        /**
+         * Specifies the number of threads each decoder may use.
+         * <p/>
+         * Takes effect when a stream is selected; decoders that do not support threading ignore this setting.
+         *
+         * @param threadCount The number of threads, or 0 to use one per available processor. Defaults to 1.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the thread count is negative.
+         * @since 1.0
+         */
+        Builder threads(int threadCount);
+
+        /**
+         * Specifies the kind of multithreading decoders may use, when running on multiple threads.
+         *
+         * @param threadType The thread type. Defaults to {@link ThreadType#ANY}.
+         * @return The current Builder.
+         * @see #threads(int)
+         * @since 1.0
+         */
+        Builder threadType(ThreadType threadType);
+
+        /**
+         * Specifies whether frames passed to the audio and video handlers are recycled.
+         * <p/>
+         * When enabled, the same {@link Frame} objects and buffers are handed to the handlers over and over, so
+         * decoding does not allocate once it has warmed up. Handlers must then not hold on to a frame, or any of
+         * its planes and buffers, after returning from {@code handle}. The same goes for the {@link DecodedFrame}s
+         * returned by {@link MediaStream#nextFrame()}, which are valid until the next call.
+         * <p/>
+         * Otherwise, every audio and video frame comes with a new {@link Frame}, its planes, and a buffer per plane.
+         * Subtitles always allocate, as do frames {@link Frame#retain() retained} by handlers, and the frames of the
+         * read-ahead ring, whose views may still be in use on other threads. Media opened
+         * {@link tk.ivybits.javi.media.OpenOptions.Builder#cancellable(boolean) cancellable} or with a timeout costs
+         * a few small objects per block read however the frames are delivered, as FFmpeg calls back into Java to
+         * check whether to abort the read.
+         *
+         * @param reuseFrames True to recycle frames. Defaults to false.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        Builder reuseFrames(boolean reuseFrames);
+
+        /**
+         * Specifies whether only keyframes are decoded from the video stream.
+         * <p/>
+         * Every other video packet is dropped before it reaches the decoder, which makes for a cheap way to scan
+         * through a video, e.g. for thumbnailing or scene indexing. Frame durations still describe the frame
+         * itself, not the gap up to the next keyframe.
+         *
+         * @param keyframesOnly True to decode keyframes only. Defaults to false.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        Builder keyframesOnly(boolean keyframesOnly);
+
+        /**
+         * Specifies whether video decoding may trade quality for speed.
+         * <p/>
+         * When enabled, the deblocking loop filter is skipped on every frame, and the IDCT on frames no other frames
+         * are predicted from. Output is blockier, but good enough for previews.
+         * Decoders that do not support skipping either step ignore this setting.
+         *
+         * @param fastDecode True to decode fast. Defaults to false.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        Builder fastDecode(boolean fastDecode);
+
+        /**
+         * Specifies the resolution video is decoded at, for decoders that support decoding at reduced resolution.
+         * <p/>
+         * Decoding at a reduced resolution is far cheaper than decoding in full and scaling down afterwards.
+         * Once the stream is selected, {@link VideoStream#width()}, {@link VideoStream#height()} and the frames
+         * passed to the video handler reflect the reduced size. Decoders that do not support the requested level
+         * use the lowest resolution they do support.
+         *
+         * @param lowres 0 for full resolution, 1 for half, 2 for a quarter or 3 for an eighth. Defaults to 0.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the level is out of range.
+         * @since 1.0
+         */
+        Builder lowres(int lowres);
+
+        /**
+         * Specifies how many video frames may be decoded ahead of presentation.
+         * <p/>
+         * When reading ahead, decoded frames are kept in a ring of reference-counted frames, and handed to the video
+         * handler by a thread of their own, evening out the time individual frames take to decode. Such frames may be
+         * {@link Frame#retain() retained} past the handler call, and processed on other threads, without copying.
+         *
+         * @param frames The size of the ring, or 0 to hand frames to the video handler straight from the decoder.
+         *               Defaults to 0.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if the size is negative.
+         * @since 1.0
+         */
+        Builder readAhead(int frames);
+
         /**
          * Finalize creation of a {@link MediaStream}.
          *
@@ -0,0 +1,169 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.media.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A unit of compressed media, as demuxed from a container by a {@link PacketStream}.
+ * <p/>
+ * Timestamps and durations are in the time base of the stream the packet belongs to.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class Packet {
+    /**
+     * Value of timestamps that are not known.
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private final int stream;
+    private final ByteBuffer data;
+    private final long pts, dts, duration, position;
+    private final boolean keyframe, corrupt;
+    private final double timeBase;
+
+    /**
+     * Creates a Packet.
+     *
+     * @param stream   The index of the stream the packet belongs to.
+     * @param data     The packet data.
+     * @param pts      The presentation timestamp, or {@link #NO_TIMESTAMP}.
+     * @param dts      The decoding timestamp, or {@link #NO_TIMESTAMP}.
+     * @param duration The duration, or 0 if unknown.
+     * @param position The byte position in the container, or -1 if unknown.
+     * @param keyframe Whether the packet holds a keyframe.
+     * @param corrupt  Whether the packet is known to be corrupt.
+     * @param timeBase The length of a timestamp unit, in seconds.
+     * @since 1.0
+     */
+    public Packet(int stream, ByteBuffer data, long pts, long dts, long duration, long position,
+                  boolean keyframe, boolean corrupt, double timeBase) {
+        this.stream = stream;
+        this.data = data;
+        this.pts = pts;
+        this.dts = dts;
+        this.duration = duration;
+        this.position = position;
+        this.keyframe = keyframe;
+        this.corrupt = corrupt;
+        this.timeBase = timeBase;
+    }
+
+    /**
+     * Fetches the index of the stream this packet belongs to.
+     *
+     * @return The index, as returned by {@link Stream#index()}.
+     * @since 1.0
+     */
+    public int stream() {
+        return stream;
+    }
+
+    /**
+     * Fetches the compressed data of this packet.
+     *
+     * @return A direct buffer over the data, only valid until the packet handler returns.
+     * @since 1.0
+     */
+    public ByteBuffer data() {
+        return data;
+    }
+
+    /**
+     * Fetches the size of this packet.
+     *
+     * @return The size of the data, in bytes.
+     * @since 1.0
+     */
+    public int size() {
+        return data.capacity();
+    }
+
+    /**
+     * Fetches the presentation timestamp of this packet.
+     *
+     * @return The timestamp, or {@link #NO_TIMESTAMP} if unknown.
+     * @since 1.0
+     */
+    public long pts() {
+        return pts;
+    }
+
+    /**
+     * Fetches the decoding timestamp of this packet.
+     *
+     * @return The timestamp, or {@link #NO_TIMESTAMP} if unknown.
+     * @since 1.0
+     */
+    public long dts() {
+        return dts;
+    }
+
+    /**
+     * Fetches the duration of this packet.
+     *
+     * @return The duration, or 0 if unknown.
+     * @since 1.0
+     */
+    public long duration() {
+        return duration;
+    }
+
+    /**
+     * Fetches the position of this packet in the container.
+     *
+     * @return The byte position, or -1 if unknown.
+     * @since 1.0
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Checks if this packet holds a keyframe.
+     *
+     * @return True if so, false otherwise.
+     * @since 1.0
+     */
+    public boolean keyframe() {
+        return keyframe;
+    }
+
+    /**
+     * Checks if this packet is known to be corrupt.
+     *
+     * @return True if so, false otherwise.
+     * @since 1.0
+     */
+    public boolean corrupt() {
+        return corrupt;
+    }
+
+    /**
+     * Fetches the time base of the stream this packet belongs to.
+     *
+     * @return The length of a timestamp unit, in seconds.
+     * @since 1.0
+     */
+    public double timeBase() {
+        return timeBase;
+    }
+}
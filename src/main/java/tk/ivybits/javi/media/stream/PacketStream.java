@@ -0,0 +1,92 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package tk.ivybits.javi.media.stream;
+
+import tk.ivybits.javi.media.handler.PacketHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of compressed packets, demuxed from a container without decoding.
+ * <p/>
+ * Suited to work that does not need decoded media, such as bitrate analysis, GOP inspection or stream copy,
+ * which then runs at the speed the container can be read at.
+ * </p>
+ * Cannot be instantiated directly: use {@link PacketStream.Builder}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface PacketStream extends Runnable, Closeable {
+    /**
+     * Demuxes the container, passing every packet of the selected streams on to the packet handler.
+     * Blocks until the end of the container, or until the stream is closed.
+     *
+     * @since 1.0
+     */
+    @Override
+    void run();
+
+    /**
+     * Stops demuxing. May be called from any thread.
+     *
+     * @since 1.0
+     */
+    @Override
+    void close();
+
+    /**
+     * Builder for PacketStreams.
+     *
+     * @version 1.0
+     * @since 1.0
+     */
+    public static interface Builder {
+        /**
+         * Specifies the handler for packets.
+         *
+         * @param handler The handler.
+         * @return The current Builder.
+         * @since 1.0
+         */
+        Builder handler(PacketHandler handler);
+
+        /**
+         * Restricts demuxing to some streams of the container. Packets of all other streams are dropped
+         * by the demuxer.
+         *
+         * @param streams The streams to demux. If none are specified, every stream of the container is.
+         * @return The current Builder.
+         * @throws IllegalArgumentException Thrown if a stream does not belong to the container.
+         * @since 1.0
+         */
+        Builder streams(Stream... streams);
+
+        /**
+         * Finalizes the packet stream.
+         *
+         * @return The built PacketStream.
+         * @throws IOException Thrown if the container could not be prepared for demuxing.
+         * @since 1.0
+         */
+        PacketStream create() throws IOException;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.media.transcoder;
+
+import static tk.ivybits.javi.ffmpeg.LibSWScale.*;
+
+/**
+ * Algorithms video may be rescaled with, roughly from fastest to best looking.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public enum ScaleAlgorithm {
+    /**
+     * Nearest neighbour. Blocky, but by far the cheapest.
+     */
+    POINT(SWS_POINT),
+    /**
+     * Bilinear, with a cheaper but less accurate filter for the horizontal pass.
+     */
+    FAST_BILINEAR(SWS_FAST_BILINEAR),
+    /**
+     * Bilinear. Smooth, at a moderate cost; the usual choice for playback.
+     */
+    BILINEAR(SWS_BILINEAR),
+    /**
+     * Bicubic. Sharper than bilinear, especially when upscaling, but slower.
+     */
+    BICUBIC(SWS_BICUBIC),
+    /**
+     * Averages the source pixels covered by each destination pixel. Well suited for downscaling by large factors.
+     */
+    AREA(SWS_AREA);
+
+    public final int id;
+
+    ScaleAlgorithm(int id) {
+        this.id = id;
+    }
+}
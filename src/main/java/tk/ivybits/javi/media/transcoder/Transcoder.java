@@ -28,4 +28,16 @@ import java.io.Closeable;
  */
 public interface Transcoder extends Closeable {
     Frame transcode(Frame buffer);
+
+    /**
+     * Transcodes a frame into another, reusing it rather than allocating a new frame.
+     * <p/>
+     * The output frame is resized as needed; where its planes end up pointing depends on the implementation.
+     *
+     * @param in  The frame to transcode.
+     * @param out The frame to transcode into.
+     * @return The output frame.
+     * @since 1.0
+     */
+    Frame transcode(Frame in, Frame out);
 }
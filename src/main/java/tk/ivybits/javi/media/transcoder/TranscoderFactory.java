@@ -26,11 +26,18 @@ import tk.ivybits.javi.ffmpeg.media.transcoder.SWFrameTranscoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import static tk.ivybits.javi.ffmpeg.LibSWScale.SWS_ACCURATE_RND;
+import static tk.ivybits.javi.ffmpeg.LibSWScale.SWS_FULL_CHR_H_INP;
+import static tk.ivybits.javi.ffmpeg.LibSWScale.SWS_FULL_CHR_H_INT;
+
 public class TranscoderFactory {
     public static class VideoTranscoderBuilder {
         private int srcWidth = 0, srcHeight = 0;
         private int dstWidth = 0, dstHeight = 0;
         private PixelFormat srcPixelFormat, dstPixelFormat;
+        private ScaleAlgorithm algorithm = ScaleAlgorithm.BICUBIC;
+        private boolean accurateRounding, fullChroma;
+        private int slices = 1;
         private ArrayList<Filter> filters = new ArrayList<Filter>();
 
         public VideoTranscoderBuilder from(int srcWidth, int srcHeight, PixelFormat srcPixelFormat) {
@@ -60,8 +67,67 @@ public class TranscoderFactory {
             return this;
         }
 
+        /**
+         * Specifies the algorithm to rescale with. Defaults to {@link ScaleAlgorithm#BICUBIC}.
+         *
+         * @param algorithm The algorithm.
+         * @return The current builder.
+         * @since 1.0
+         */
+        public VideoTranscoderBuilder algorithm(ScaleAlgorithm algorithm) {
+            if (algorithm == null)
+                throw new IllegalArgumentException("null algorithm");
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Specifies whether to round accurately, at some cost in speed. Off by default.
+         *
+         * @param accurateRounding True to round accurately, false otherwise.
+         * @return The current builder.
+         * @since 1.0
+         */
+        public VideoTranscoderBuilder accurateRounding(boolean accurateRounding) {
+            this.accurateRounding = accurateRounding;
+            return this;
+        }
+
+        /**
+         * Specifies whether to interpolate chroma at full horizontal resolution, rather than at the resolution it
+         * is subsampled at, at some cost in speed. Off by default.
+         *
+         * @param fullChroma True to interpolate at full resolution, false otherwise.
+         * @return The current builder.
+         * @since 1.0
+         */
+        public VideoTranscoderBuilder fullChroma(boolean fullChroma) {
+            this.fullChroma = fullChroma;
+            return this;
+        }
+
+        /**
+         * Specifies how many horizontal bands each frame may be split into, to be scaled concurrently.
+         * Worthwhile for large frames, such as when downscaling 4K video. Defaults to 1: scaling on the calling thread.
+         *
+         * @param slices The maximum number of bands.
+         * @return The current builder.
+         * @since 1.0
+         */
+        public VideoTranscoderBuilder slices(int slices) {
+            if (slices < 1)
+                throw new IllegalArgumentException("slice count must be positive");
+            this.slices = slices;
+            return this;
+        }
+
         public Transcoder create() {
-              return new SWFrameTranscoder(srcWidth, srcHeight, srcPixelFormat, dstWidth, dstHeight, dstPixelFormat, filters);
+            int flags = algorithm.id;
+            if (accurateRounding)
+                flags |= SWS_ACCURATE_RND;
+            if (fullChroma)
+                flags |= SWS_FULL_CHR_H_INT | SWS_FULL_CHR_H_INP;
+            return new SWFrameTranscoder(srcWidth, srcHeight, srcPixelFormat, dstWidth, dstHeight, dstPixelFormat, flags, slices, filters);
         }
     }
 
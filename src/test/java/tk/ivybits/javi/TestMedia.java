@@ -0,0 +1,60 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi;
+
+import org.junit.Assume;
+
+import java.io.File;
+
+/**
+ * Locates the media tests run against, skipping them if it or the FFmpeg natives are unavailable.
+ * <p/>
+ * Tests decode a local file, passed in as {@code -Djavi.test.media=<path>}; a few seconds of video with an audio
+ * track are enough.
+ */
+public final class TestMedia {
+    private TestMedia() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Loads the FFmpeg natives, skipping the calling test if they cannot be loaded.
+     */
+    public static void natives() {
+        try {
+            JAVI.initialize();
+        } catch (LinkageError e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    /**
+     * Fetches the media file to test against, skipping the calling test if there is none.
+     *
+     * @return The file.
+     */
+    public static File sample() {
+        String path = System.getProperty("javi.test.media");
+        Assume.assumeTrue("javi.test.media not set", path != null);
+        File file = new File(path);
+        Assume.assumeTrue("no such file: " + file, file.isFile());
+        natives();
+        return file;
+    }
+}
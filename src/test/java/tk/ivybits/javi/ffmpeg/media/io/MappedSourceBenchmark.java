@@ -0,0 +1,95 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.io;
+
+import org.junit.Test;
+import tk.ivybits.javi.TestMedia;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.MediaFactory;
+import tk.ivybits.javi.media.handler.PacketHandler;
+import tk.ivybits.javi.media.stream.Packet;
+import tk.ivybits.javi.media.stream.PacketStream;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares open and demux throughput of memory-mapped files against FFmpeg's own file protocol.
+ * <p/>
+ * Not run by default, as it takes a while on the large files it is meant for:
+ * {@code mvn test -Dtest=MappedSourceBenchmark -Djavi.test.media=<file>}. Each round opens the file and demuxes
+ * every packet of it; the fastest of {@link #ROUNDS} rounds counts, after a round to fill the page cache.
+ */
+public class MappedSourceBenchmark {
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void compareWithFileProtocol() throws IOException {
+        File file = TestMedia.sample();
+        Counter path = new Counter(), mapped = new Counter();
+        demux(file, false, path);
+        demux(file, true, mapped);
+        // Both must see the very same packets for the comparison to mean anything
+        assertEquals(path.packets, mapped.packets);
+        assertEquals(path.bytes, mapped.bytes);
+
+        long pathTime = Long.MAX_VALUE, mappedTime = Long.MAX_VALUE;
+        for (int i = 0; i != ROUNDS; i++) {
+            pathTime = Math.min(pathTime, demux(file, false, new Counter()));
+            mappedTime = Math.min(mappedTime, demux(file, true, new Counter()));
+        }
+        double size = file.length() / (1024.0 * 1024.0);
+        System.out.printf("%s (%.1f MiB, %d packets): file protocol %.1f MiB/s, mapped %.1f MiB/s (%.2fx)%n",
+                file.getName(), size, path.packets,
+                size / (pathTime / 1e9), size / (mappedTime / 1e9), pathTime / (double) mappedTime);
+    }
+
+    /**
+     * Opens a file and demuxes all of it.
+     *
+     * @param file    The file.
+     * @param map     True to map the file, false to read it through the file protocol.
+     * @param counter The handler to pass the packets to.
+     * @return The time taken, in nanoseconds.
+     */
+    private static long demux(File file, boolean map, Counter counter) throws IOException {
+        long start = System.nanoTime();
+        Media media = map ? MediaFactory.map(file) : MediaFactory.open(file);
+        try {
+            PacketStream stream = media.packets().handler(counter).create();
+            stream.run();
+            stream.close();
+        } finally {
+            media.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static class Counter extends PacketHandler {
+        private long packets, bytes;
+
+        @Override
+        public void handle(Packet packet) {
+            packets++;
+            bytes += packet.size();
+        }
+    }
+}
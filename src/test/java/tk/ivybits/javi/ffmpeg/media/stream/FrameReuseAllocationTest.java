@@ -0,0 +1,125 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import tk.ivybits.javi.TestMedia;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.MediaFactory;
+import tk.ivybits.javi.media.handler.AudioHandler;
+import tk.ivybits.javi.media.handler.FrameHandler;
+import tk.ivybits.javi.media.stream.Frame;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that decoding with recycled frames allocates nothing once warmed up.
+ * <p/>
+ * The media is opened with default options, so FFmpeg never calls back into Java while reading it.
+ */
+public class FrameReuseAllocationTest {
+    // Frames decoded before measuring, so that view caches fill up and the decode path gets compiled
+    private static final int WARMUP = 300;
+    private static final int FRAMES = 1000;
+    // Slack for taking the measurement itself, in bytes; far less than a single frame would allocate
+    private static final long SLACK = 512;
+    private ThreadMXBean threads;
+    private Media media;
+    private FFMediaStream stream;
+    private int delivered;
+
+    @Before
+    public void setUp() throws IOException {
+        media = MediaFactory.open(TestMedia.sample());
+        Assume.assumeFalse("no video stream", media.videoStreams().isEmpty());
+        threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (stream != null)
+            stream.close();
+        if (media != null)
+            media.close();
+    }
+
+    private void open() throws IOException {
+        stream = (FFMediaStream) media.stream()
+                .video(new FrameHandler() {
+                    @Override
+                    public void handle(Frame buffer, long duration) {
+                        delivered++;
+                    }
+                })
+                .audio(new AudioHandler() {
+                    @Override
+                    public void handle(Frame buffer) {
+                        delivered++;
+                    }
+                })
+                .reuseFrames(true)
+                .create();
+        stream.setVideoStream(media.videoStreams().get(0));
+        if (!media.audioStreams().isEmpty())
+            stream.setAudioStream(media.audioStreams().get(0));
+    }
+
+    @Test
+    public void pullingAllocatesNothing() throws IOException {
+        open();
+        for (int i = 0; i != WARMUP; i++)
+            Assume.assumeNotNull(stream.nextFrame());
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int frames = 0;
+        while (frames != FRAMES && stream.nextFrame() != null)
+            frames++;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertAllocationFree(frames, allocated);
+    }
+
+    @Test
+    public void steppingAllocatesNothing() throws IOException {
+        open();
+        while (delivered < WARMUP)
+            Assume.assumeTrue(stream.step());
+
+        long thread = Thread.currentThread().getId();
+        int start = delivered;
+        long before = threads.getThreadAllocatedBytes(thread);
+        while (delivered - start < FRAMES && stream.step()) ;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertAllocationFree(delivered - start, allocated);
+    }
+
+    private static void assertAllocationFree(int frames, long allocated) {
+        Assume.assumeTrue("too few frames to measure", frames > WARMUP / 10);
+        assertTrue(allocated + " bytes allocated over " + frames + " frames", allocated <= SLACK);
+    }
+}
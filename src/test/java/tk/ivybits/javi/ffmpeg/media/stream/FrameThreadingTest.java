@@ -0,0 +1,124 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import tk.ivybits.javi.TestMedia;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.MediaFactory;
+import tk.ivybits.javi.media.handler.FrameHandler;
+import tk.ivybits.javi.media.stream.DecodedFrame;
+import tk.ivybits.javi.media.stream.Frame;
+import tk.ivybits.javi.media.stream.MediaStream;
+import tk.ivybits.javi.media.stream.Stream;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that frame-threaded decoding delivers every frame, including those still inside the decoder threads
+ * at the end of the media.
+ */
+public class FrameThreadingTest {
+    private static final int THREADS = 4;
+    private Media media;
+    private int frames;
+
+    @Before
+    public void setUp() throws IOException {
+        media = MediaFactory.open(TestMedia.sample());
+        Assume.assumeFalse("no video stream", media.videoStreams().isEmpty());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (media != null)
+            media.close();
+    }
+
+    private MediaStream open(boolean threaded, boolean pipelined) throws IOException {
+        frames = 0;
+        MediaStream.Builder builder = media.stream()
+                .video(new FrameHandler() {
+                    @Override
+                    public void handle(Frame buffer, long duration) {
+                        frames++;
+                    }
+                });
+        if (threaded)
+            builder.threads(THREADS).threadType(MediaStream.ThreadType.FRAME);
+        if (pipelined)
+            builder.pipelined(8, 8, 8);
+        MediaStream stream = builder.create();
+        stream.setVideoStream(media.videoStreams().get(0));
+        return stream;
+    }
+
+    private int run(boolean threaded, boolean pipelined) throws IOException {
+        MediaStream stream = open(threaded, pipelined);
+        try {
+            stream.run();
+        } finally {
+            stream.close();
+        }
+        return frames;
+    }
+
+    private int pull(boolean threaded) throws IOException {
+        MediaStream stream = open(threaded, false);
+        try {
+            int pulled = 0;
+            DecodedFrame frame;
+            while ((frame = stream.nextFrame()) != null) {
+                if (frame.type() == Stream.Type.STREAM_VIDEO)
+                    pulled++;
+            }
+            return pulled;
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void runDeliversEveryFrame() throws IOException {
+        int expected = run(false, false);
+        Assume.assumeTrue("no video frames decoded", expected > 0);
+        assertEquals(expected, run(true, false));
+    }
+
+    @Test
+    public void pipelinedDeliversEveryFrame() throws IOException {
+        int expected = run(false, false);
+        Assume.assumeTrue("no video frames decoded", expected > 0);
+        assertEquals(expected, run(false, true));
+        assertEquals(expected, run(true, true));
+    }
+
+    @Test
+    public void pullingDeliversEveryFrame() throws IOException {
+        int expected = run(false, false);
+        Assume.assumeTrue("no video frames decoded", expected > 0);
+        assertEquals(expected, pull(false));
+        assertEquals(expected, pull(true));
+    }
+}
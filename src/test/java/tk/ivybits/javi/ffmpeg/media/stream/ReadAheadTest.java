@@ -0,0 +1,113 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.stream;
+
+import org.junit.Assume;
+import org.junit.Test;
+import tk.ivybits.javi.TestMedia;
+import tk.ivybits.javi.media.Media;
+import tk.ivybits.javi.media.MediaFactory;
+import tk.ivybits.javi.media.handler.FrameHandler;
+import tk.ivybits.javi.media.stream.Frame;
+import tk.ivybits.javi.media.stream.MediaStream;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks how the presenter thread of a read-ahead stream copes with what handlers do.
+ */
+public class ReadAheadTest {
+    private int presented;
+
+    @Test(timeout = 30000)
+    public void handlerFailureStopsStream() throws IOException {
+        Media media = MediaFactory.open(TestMedia.sample());
+        try {
+            Assume.assumeFalse("no video stream", media.videoStreams().isEmpty());
+            final RuntimeException failure = new IllegalStateException("handler failed");
+            MediaStream stream = media.stream()
+                    .video(new FrameHandler() {
+                        @Override
+                        public void handle(Frame buffer, long duration) {
+                            throw failure;
+                        }
+                    })
+                    .readAhead(2)
+                    .create();
+            try {
+                stream.setVideoStream(media.videoStreams().get(0));
+                // The decoder fills the ring long before the end of the media, and must not wait on it forever
+                try {
+                    stream.run();
+                    fail("handler failure not rethrown");
+                } catch (IllegalStateException e) {
+                    assertSame(failure, e);
+                }
+                assertFalse(stream.isPlaying());
+            } finally {
+                stream.close();
+            }
+        } finally {
+            media.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void handlerReleasingFrameKeepsPresenting() throws IOException {
+        Media media = MediaFactory.open(TestMedia.sample());
+        try {
+            Assume.assumeFalse("no video stream", media.videoStreams().isEmpty());
+            int expected = present(media, 0, false);
+            Assume.assumeTrue("no video frames decoded", expected > 0);
+            // The presenter recycles every frame once the handler returns, released or not
+            assertEquals(expected, present(media, 2, true));
+        } finally {
+            media.close();
+        }
+    }
+
+    private int present(Media media, int readAhead, final boolean release) throws IOException {
+        presented = 0;
+        MediaStream stream = media.stream()
+                .video(new FrameHandler() {
+                    @Override
+                    public void handle(Frame buffer, long duration) {
+                        presented++;
+                        if (release) {
+                            buffer.release();
+                            buffer.release();
+                        }
+                    }
+                })
+                .readAhead(readAhead)
+                .create();
+        try {
+            stream.setVideoStream(media.videoStreams().get(0));
+            stream.run();
+        } finally {
+            stream.close();
+        }
+        return presented;
+    }
+}
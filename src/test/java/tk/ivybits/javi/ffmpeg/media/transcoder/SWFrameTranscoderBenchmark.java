@@ -0,0 +1,114 @@
+/*
+ * This file is part of JAVI.
+ *
+ * JAVI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * JAVI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with JAVI.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package tk.ivybits.javi.ffmpeg.media.transcoder;
+
+import org.junit.Assume;
+import org.junit.Test;
+import tk.ivybits.javi.TestMedia;
+import tk.ivybits.javi.format.PixelFormat;
+import tk.ivybits.javi.media.stream.Frame;
+import tk.ivybits.javi.media.transcoder.Transcoder;
+import tk.ivybits.javi.media.transcoder.TranscoderFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares sliced scaling against scaling in one piece, on a synthetic 4K frame downscaled to 1080p.
+ * <p/>
+ * Not run by default: {@code mvn test -Dtest=SWFrameTranscoderBenchmark}. Only needs the FFmpeg natives.
+ */
+public class SWFrameTranscoderBenchmark {
+    private static final int SRC_WIDTH = 3840, SRC_HEIGHT = 2160;
+    private static final int DST_WIDTH = 1920, DST_HEIGHT = 1080;
+    private static final int WARMUP = 20, FRAMES = 100;
+
+    @Test
+    public void compareSlicedWithSingleThreaded() throws IOException {
+        TestMedia.natives();
+        int cores = Runtime.getRuntime().availableProcessors();
+        Assume.assumeTrue("nothing to compare on a single core", cores > 1);
+        Frame in = frame();
+
+        Transcoder single = create(1), sliced = create(cores);
+        try {
+            long singleTime = time(single, in), slicedTime = time(sliced, in);
+            // Both must produce frames of the same layout for the comparison to mean anything
+            Frame a = single.transcode(in), b = sliced.transcode(in);
+            assertEquals(a.planes(), b.planes());
+            for (int p = 0; p != a.planes(); p++) {
+                assertEquals(a.plane(p).linesize(), b.plane(p).linesize());
+                assertEquals(a.plane(p).buffer().capacity(), b.plane(p).buffer().capacity());
+            }
+            System.out.printf("YUV420P %dx%d to BGR24 %dx%d: single %.2f ms/frame, %d slices %.2f ms/frame (%.2fx)%n",
+                    SRC_WIDTH, SRC_HEIGHT, DST_WIDTH, DST_HEIGHT, singleTime / 1e6, cores, slicedTime / 1e6,
+                    singleTime / (double) slicedTime);
+        } finally {
+            single.close();
+            sliced.close();
+        }
+    }
+
+    private static Transcoder create(int slices) {
+        return TranscoderFactory.frame()
+                .from(SRC_WIDTH, SRC_HEIGHT, PixelFormat.YUV420P)
+                .to(PixelFormat.BGR24)
+                .rescale(DST_WIDTH, DST_HEIGHT)
+                .slices(slices)
+                .create();
+    }
+
+    /**
+     * Times a transcoder.
+     *
+     * @param transcoder The transcoder.
+     * @param in         The frame to transcode over and over.
+     * @return The average time a frame took, in nanoseconds.
+     */
+    private static long time(Transcoder transcoder, Frame in) {
+        for (int i = 0; i != WARMUP; i++)
+            transcoder.transcode(in);
+        long start = System.nanoTime();
+        for (int i = 0; i != FRAMES; i++)
+            transcoder.transcode(in);
+        return (System.nanoTime() - start) / FRAMES;
+    }
+
+    /**
+     * Creates a YUV420P source frame filled with gradients, so that no band is trivially uniform.
+     *
+     * @return The frame.
+     */
+    private static Frame frame() {
+        Frame.Plane[] planes = new Frame.Plane[3];
+        for (int p = 0; p != planes.length; p++) {
+            int width = p == 0 ? SRC_WIDTH : SRC_WIDTH / 2, height = p == 0 ? SRC_HEIGHT : SRC_HEIGHT / 2;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(width * height);
+            for (int y = 0; y != height; y++) {
+                for (int x = 0; x != width; x++)
+                    buffer.put((byte) (x + y * (p + 1)));
+            }
+            buffer.flip();
+            planes[p] = new Frame.Plane(buffer, width);
+        }
+        return new Frame(planes);
+    }
+}